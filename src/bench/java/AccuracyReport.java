@@ -0,0 +1,91 @@
+/* Error against cost for each update the fast marching solver offers:
+ * first and second order, with and without the diagonal stencil. Every
+ * setting solves the distance from a point source over an empty 512x512
+ * pixel domain on grids of 32 to 512 nodes a side, where the exact answer
+ * is the Euclidean distance to the source.
+ *
+ * For each case it reports the mean and largest error of the travel time
+ * (in pixels) and the time per solve. Given a target mean error in pixels,
+ * it also names the cheapest setting that meets it.
+ *
+ * Usage: java AccuracyReport [target error]
+ */
+public class AccuracyReport {
+  private static final int WORLD = 512; // side of the domain, in pixels
+  private static final int[] DIMS = { 32, 64, 128, 256, 512 };
+  private static final long MEASURE_NANOS = 500000000L;
+
+  private static final String[] SETTINGS = { "fmm1", "fmm1+diag", "fmm2",
+      "fmm2+diag" };
+
+  public static void main(String[] args) {
+    double target = args.length > 0 ? Double.parseDouble(args[0]) : -1;
+    String best = null;
+    double bestMillis = Double.MAX_VALUE;
+
+    System.out.printf("%-10s %5s %8s %12s %12s %12s%n", "setting", "grid",
+        "spacing", "mean err", "max err", "ms/solve");
+
+    for (int dim : DIMS) {
+      for (int s = 0; s < SETTINGS.length; s++) {
+        int order = s < 2 ? FmmSolver.FIRST_ORDER : FmmSolver.SECOND_ORDER;
+        boolean diagonal = (s & 1) != 0;
+        double[] result = run(dim, order, diagonal);
+
+        System.out.printf("%-10s %5d %8d %12.4f %12.4f %12.3f%n",
+            SETTINGS[s], dim, WORLD / dim, result[0], result[1], result[2]);
+
+        if (result[0] <= target && result[2] < bestMillis) {
+          best = SETTINGS[s] + " on a " + dim + "x" + dim + " grid";
+          bestMillis = result[2];
+        }
+      }
+    }
+
+    if (target >= 0) {
+      System.out.println(best == null
+          ? "No setting reaches a mean error of " + target
+          : "Cheapest setting with a mean error of at most " + target + ": "
+              + best + String.format(" (%.3f ms/solve)", bestMillis));
+    }
+  }
+
+  /* Solves one case. Returns { mean error, max error, ms per solve }. */
+  private static double[] run(int dim, int order, boolean diagonal) {
+    int spacing = WORLD / dim;
+    Grid grid = new Grid(dim, dim, spacing, 0, 0);
+    FmmSolver solver = new FmmSolver(grid);
+    solver.setOrder(order);
+    solver.setDiagonal(diagonal);
+
+    // off center, so the field has both short and long distances
+    int sourceX = dim / 3;
+    int sourceY = dim / 4;
+
+    long start = System.nanoTime();
+    long solves = 0;
+    do {
+      solver.reset();
+      solver.addSource(sourceX, sourceY);
+      solver.march();
+      solves++;
+    } while (System.nanoTime() - start < MEASURE_NANOS);
+    double millis = (System.nanoTime() - start) / 1e6 / solves;
+
+    double sum = 0;
+    double max = 0;
+    for (int y = 0; y < dim; y++) {
+      for (int x = 0; x < dim; x++) {
+        double exact = spacing * Math.hypot(x - sourceX, y - sourceY);
+        double error = Math.abs(grid.getTime(x, y) - exact);
+        sum += error;
+        max = Math.max(max, error);
+      }
+    }
+
+    return new double[] { sum / grid.size(), max, millis };
+  }
+
+  private AccuracyReport() {
+  }
+}
@@ -0,0 +1,289 @@
+import java.awt.Point;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/* Benchmarks for each stage of a solve: obstacle rasterization, the fast
+ * marching and fast sweeping solves, the fast marching solve towards the
+ * scene's end only on a dense and a tiled grid ("solve-p2p" and
+ * "solve-tiled"), the full solve on an off-heap grid ("solve-offheap"),
+ * the coarse-to-fine corridor query (from rasterization to path), the
+ * gradient field, and path tracing with and without it ("trace-grad"
+ * and "trace"). Every stage runs on the four Resolution presets plus 1k
+ * and 4k synthetic grids, against empty, sparse and dense scenes of DShape
+ * rectangles, ellipses and triangles.
+ *
+ * For each case it reports operations per second, time per operation,
+ * cells per second, and the allocation per operation and per second (summed
+ * over all threads, so fork-join workers are included). The march itself
+ * allocates nothing per step, so "solve" should report 0 B/op.
+ *
+ * Usage: java Benchmarks [filter ...]. A case runs if every filter matches
+ * its stage, grid or scene name, e.g. "solve 256" or "rasterize dense".
+ */
+public class Benchmarks {
+  private static final long WARMUP_NANOS = 1000000000L;
+  private static final long MEASURE_NANOS = 2000000000L;
+  private static final int MIN_OPS = 3;
+
+  private static final String[] STAGES = { "rasterize", "solve",
+      "solve-p2p", "solve-tiled", "solve-offheap", "sweep", "corridor",
+      "gradient", "trace", "trace-grad" };
+  private static final String[] GRIDS = { "32", "64", "128", "256", "1k",
+      "4k" };
+  private static final String[] SCENES = { "empty", "sparse", "dense" };
+
+  // obstacles per 512x512 pixels of domain, for each scene
+  private static final int[] OBSTACLES_PER_TILE = { 0, 10, 100 };
+
+  /* One benchmarked operation on a prepared scene. */
+  private abstract static class Stage {
+    abstract void run();
+  }
+
+  /* A grid with its obstacles, start and end points. */
+  private static class Scene {
+    final Resolution resolution;
+    final List<DShape> obstacles;
+    final Grid grid;
+    final int startX; // start cell
+    final int startY;
+    final int endX; // end point, in world coordinates
+    final int endY;
+
+    Scene(Resolution resolution, int perTile, long seed) {
+      this.resolution = resolution;
+      int padding = resolution.getPadding();
+      grid = new Grid(resolution, padding, padding);
+
+      int worldX = resolution.getDimX() * resolution.getSpacing();
+      int worldY = resolution.getDimY() * resolution.getSpacing();
+
+      startX = resolution.getDimX() / 4;
+      startY = resolution.getDimY() / 2;
+      endX = padding + worldX - 3 * resolution.getSpacing();
+      endY = padding + worldY - 3 * resolution.getSpacing();
+
+      // scatter obstacles, keeping the start and end points clear
+      obstacles = new ArrayList<DShape>();
+      Random random = new Random(seed);
+      int count = (int) ((long) perTile * worldX * worldY / (512 * 512));
+      int startWorldX = padding + startX * resolution.getSpacing();
+      int startWorldY = padding + startY * resolution.getSpacing();
+
+      while (obstacles.size() < count) {
+        DShape temp = new DShape(DShape.RECTANGLE + random.nextInt(3));
+        temp.setSize(20 + random.nextInt(40), 20 + random.nextInt(40));
+        temp.setLocation(padding + random.nextInt(worldX),
+            padding + random.nextInt(worldY));
+
+        if (!temp.getBoundingBox().contains(startWorldX, startWorldY)
+            && !temp.getBoundingBox().contains(endX, endY))
+          obstacles.add(temp);
+      }
+
+      ObstacleRasterizer.rasterize(grid, obstacles);
+    }
+  }
+
+  public static void main(String[] args) {
+    System.out.printf("%-10s %-5s %-7s %12s %12s %12s %14s %12s%n", "stage",
+        "grid", "scene", "ops/s", "ms/op", "Mcells/s", "alloc B/op",
+        "alloc MB/s");
+
+    for (int g = 0; g < GRIDS.length; g++) {
+      for (int s = 0; s < SCENES.length; s++) {
+        Scene scene = null;
+
+        for (String stage : STAGES) {
+          if (!matches(args, stage, GRIDS[g], SCENES[s]))
+            continue;
+
+          // scenes are built lazily, since the large ones are slow to make
+          if (scene == null)
+            scene = new Scene(resolution(g), OBSTACLES_PER_TILE[s], 42 + s);
+
+          report(stage, GRIDS[g], SCENES[s], measure(stage(stage, scene)),
+              scene.grid.size());
+        }
+      }
+    }
+  }
+
+  // a case runs if every filter names its stage, grid or scene
+  private static boolean matches(String[] filters, String stage, String grid,
+      String scene) {
+    for (String filter : filters) {
+      if (!filter.equals(stage) && !filter.equals(grid)
+          && !filter.equals(scene))
+        return false;
+    }
+    return true;
+  }
+
+  // the presets offered by OptimalPath, then 1k and 4k grids at unit spacing
+  private static Resolution resolution(int index) {
+    if (index < 4) {
+      return new Resolution(32 * (int) Math.pow(2, index),
+          32 * (int) Math.pow(2, index), 16 / (int) Math.pow(2, index),
+          4 / (int) Math.pow(2, index) + 2);
+    }
+
+    int dim = index == 4 ? 1024 : 4096;
+    return new Resolution(dim, dim, 1, 2);
+  }
+
+  private static Stage stage(String name, final Scene scene) {
+    if ("rasterize".equals(name)) {
+      return new Stage() {
+        void run() {
+          scene.grid.resetFeasible();
+          ObstacleRasterizer.rasterize(scene.grid, scene.obstacles);
+        }
+      };
+    }
+
+    if ("solve".equals(name) || "solve-offheap".equals(name)) {
+      Grid grid = scene.grid;
+      if ("solve-offheap".equals(name)) {
+        int padding = scene.resolution.getPadding();
+        grid = new OffHeapGrid(scene.resolution, padding, padding);
+        ObstacleRasterizer.rasterize(grid, scene.obstacles);
+      }
+
+      final FmmSolver solver = new FmmSolver(grid);
+      return new Stage() {
+        void run() {
+          solver.reset();
+          solver.addSource(scene.startX, scene.startY);
+          solver.march();
+        }
+      };
+    }
+
+    if ("solve-p2p".equals(name) || "solve-tiled".equals(name)) {
+      Grid grid = scene.grid;
+      if ("solve-tiled".equals(name)) {
+        int padding = scene.resolution.getPadding();
+        grid = new TiledGrid(scene.resolution, padding, padding,
+            new TilePool(Integer.MAX_VALUE));
+        ObstacleRasterizer.rasterize(grid, scene.obstacles);
+      }
+
+      final FmmSolver solver = new FmmSolver(grid);
+      int x = (int) Math.floor((scene.endX - grid.getOriginX())
+          / grid.getSpacing());
+      int y = (int) Math.floor((scene.endY - grid.getOriginY())
+          / grid.getSpacing());
+      solver.setTarget(Math.max(0, Math.min(grid.getDimX() - 2, x)),
+          Math.max(0, Math.min(grid.getDimY() - 2, y)));
+      solver.setHeuristic(true);
+      return new Stage() {
+        void run() {
+          solver.reset();
+          solver.addSource(scene.startX, scene.startY);
+          solver.march();
+        }
+      };
+    }
+
+    if ("sweep".equals(name)) {
+      return new Stage() {
+        void run() {
+          scene.grid.reset();
+          FastSweepingSolver solver = new FastSweepingSolver(scene.grid);
+          solver.addSource(scene.startX, scene.startY);
+          solver.march(null);
+        }
+      };
+    }
+
+    if ("corridor".equals(name)) {
+      final Point source = new Point(scene.startX, scene.startY);
+      return new Stage() {
+        void run() {
+          CorridorQuery.solve(scene.resolution, scene.obstacles, source,
+              scene.endX, scene.endY);
+        }
+      };
+    }
+
+    // the rest run against a field solved once up front
+    FmmSolver solver = new FmmSolver(scene.grid);
+    solver.reset();
+    solver.addSource(scene.startX, scene.startY);
+    solver.march();
+
+    if ("gradient".equals(name)) {
+      return new Stage() {
+        void run() {
+          GradientField.compute(scene.grid, ForkJoinPool.commonPool());
+        }
+      };
+    }
+
+    final PathTracer tracer = "trace-grad".equals(name)
+        ? new PathTracer(GradientField.compute(scene.grid))
+        : new PathTracer(scene.grid);
+    return new Stage() {
+      void run() {
+        tracer.tracePath(scene.endX, scene.endY);
+      }
+    };
+  }
+
+  /* Runs a stage for the warmup time, then for the measurement time (and at
+   * least MIN_OPS times). Returns { ops, nanos, allocated bytes }. */
+  private static long[] measure(Stage stage) {
+    long end = System.nanoTime() + WARMUP_NANOS;
+    do {
+      stage.run();
+    } while (System.nanoTime() < end);
+
+    // reading the counters allocates too; measure that and take it off
+    long bytes = allocatedBytes();
+    long overhead = allocatedBytes() - bytes;
+    bytes += overhead;
+
+    long start = System.nanoTime();
+    long ops = 0;
+    long elapsed;
+    do {
+      stage.run();
+      ops++;
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < MEASURE_NANOS || ops < MIN_OPS);
+
+    return new long[] { ops, elapsed,
+        Math.max(allocatedBytes() - bytes - overhead, 0) };
+  }
+
+  // bytes allocated so far by all live threads
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+    long[] ids = threads.getAllThreadIds();
+    long total = 0;
+    for (long bytes : threads.getThreadAllocatedBytes(ids)) {
+      if (bytes > 0)
+        total += bytes;
+    }
+    return total;
+  }
+
+  private static void report(String stage, String grid, String scene,
+      long[] result, int cells) {
+    double seconds = result[1] / 1e9;
+    double opsPerSecond = result[0] / seconds;
+
+    System.out.printf("%-10s %-5s %-7s %12.2f %12.3f %12.2f %14d %12.2f%n",
+        stage, grid, scene, opsPerSecond, 1000 / opsPerSecond,
+        opsPerSecond * cells / 1e6, result[2] / result[0],
+        result[2] / seconds / 1e6);
+  }
+
+  private Benchmarks() {
+  }
+}
@@ -0,0 +1,103 @@
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/* Many agents on one map: a single march from all of the sources at once,
+ * then paths for any number of targets traced against that one field. The
+ * field holds, for every cell, the travel time from the nearest source, so
+ * each path leads back to whichever source is closest to its target. With
+ * labeling on, the field also records which source that is.
+ *
+ * Tracing only reads the solved grid, so the paths are traced in parallel
+ * on a fork-join pool. They share a gradient field, computed on the same
+ * pool the first time paths are asked for.
+ */
+class BatchQuery {
+  private final Grid grid;
+  private final int[] labels; // nearest source of each cell, or null
+  private final ForkJoinPool pool;
+  private GradientField gradient; // computed by the first findPaths()
+
+  private BatchQuery(Grid grid, int[] labels, ForkJoinPool pool) {
+    this.grid = grid;
+    this.labels = labels;
+    this.pool = pool;
+  }
+
+  /* Marches a field from all of the source cells. Node (0, 0) sits at the
+   * padding of the resolution, as in FmmSolver.solve(). */
+  public static BatchQuery solve(Resolution resolution,
+      List<DShape> obstacles, List<Point> sources, boolean labeling) {
+    return solve(resolution, obstacles, sources, labeling,
+        ForkJoinPool.commonPool());
+  }
+
+  public static BatchQuery solve(Resolution resolution,
+      List<DShape> obstacles, List<Point> sources, boolean labeling,
+      ForkJoinPool pool) {
+    Grid grid = new Grid(resolution, resolution.getPadding(),
+        resolution.getPadding());
+    ObstacleRasterizer.rasterize(grid, obstacles);
+
+    FmmSolver solver = new FmmSolver(grid);
+    solver.setLabeling(labeling);
+    for (Point source : sources) {
+      solver.addSource(source.x, source.y);
+    }
+    solver.march();
+
+    return new BatchQuery(grid, solver.getLabels(), pool);
+  }
+
+  public Grid getGrid() {
+    return grid;
+  }
+
+  // the gradient of the field, shared by every path traced against it
+  public synchronized GradientField getGradient() {
+    if (gradient == null)
+      gradient = GradientField.compute(grid, pool);
+    return gradient;
+  }
+
+  /* The index (in the list given to solve()) of the source nearest to a
+   * cell, or -1 if no source reaches it or labeling is off. */
+  public int nearestSource(int x, int y) {
+    if (labels == null)
+      return -1;
+    return labels[grid.index(x, y)];
+  }
+
+  /* Traces the path back from every target, given in world coordinates.
+   * The paths come back in the order of the targets, each one as returned
+   * by PathTracer.tracePath().
+   */
+  public List<Polyline> findPaths(List<? extends Point2D> targets) {
+    final PathTracer tracer = new PathTracer(getGradient());
+
+    List<Callable<Polyline>> traces = new ArrayList<Callable<Polyline>>(
+        targets.size());
+    for (final Point2D target : targets) {
+      traces.add(new Callable<Polyline>() {
+        public Polyline call() {
+          return tracer.tracePath(target.getX(), target.getY());
+        }
+      });
+    }
+
+    List<Polyline> paths = new ArrayList<Polyline>(targets.size());
+    try {
+      for (Future<Polyline> path : pool.invokeAll(traces)) {
+        paths.add(path.get());
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException("Path tracing failed", e);
+    }
+    return paths;
+  }
+}
@@ -0,0 +1,254 @@
+import java.awt.Point;
+import java.util.List;
+
+/* Coarse-to-fine point-to-point query. The field is first solved on a
+ * coarser rung of the resolution ladder (the same world, with the spacing
+ * multiplied by a power of two), and the coarse optimal path is traced
+ * from the target. The fine march is then confined to a corridor around
+ * that path: every fine cell further than the corridor's half width from
+ * it is blocked for the march, so only the corridor is accepted.
+ *
+ * The corridor is invalidated, and the fine field solved over the whole
+ * domain instead, if the target is not reached through it, or the fine
+ * path back from the target comes within a cell of the corridor's edge
+ * (it wanted to leave it). The coarse level can also fail to reach the
+ * target, or block the source, when its rasterization closes a gap; that
+ * falls back too. A corridor can still miss a shorter route through a gap
+ * the coarse level cannot see.
+ *
+ * The fine grid's feasibility is left as the obstacles made it; cells
+ * outside a valid corridor keep a travel time of INF.
+ */
+class CorridorQuery {
+  // the coarse level has this many times the fine spacing
+  public static final int DEFAULT_FACTOR = 4;
+
+  // half width of the corridor, in coarse spacings
+  public static final double DEFAULT_HALF_WIDTH = 3;
+
+  private final Grid grid;
+  private final Polyline path;
+  private final int coarseAccepted;
+  private final int fineAccepted;
+  private final boolean fallback;
+
+  private CorridorQuery(Grid grid, Polyline path, int coarseAccepted,
+      int fineAccepted, boolean fallback) {
+    this.grid = grid;
+    this.path = path;
+    this.coarseAccepted = coarseAccepted;
+    this.fineAccepted = fineAccepted;
+    this.fallback = fallback;
+  }
+
+  /* Solves for the path from a target, given in world coordinates, back to
+   * a source cell, with the default factor and corridor width. Node (0, 0)
+   * sits at the padding of the resolution, as in FmmSolver.solve().
+   *
+   * The result is approximate. The path is the optimal one within the
+   * corridor, which can miss a shorter route through a gap the coarse
+   * level does not see, and can come out a few percent longer than a full
+   * solve's without falling back. */
+  public static CorridorQuery solve(Resolution resolution,
+      List<DShape> obstacles, Point source, double targetX, double targetY) {
+    return solve(resolution, obstacles, source, targetX, targetY,
+        DEFAULT_FACTOR, DEFAULT_HALF_WIDTH);
+  }
+
+  /* As above, with the coarse level factor times coarser (a power of two,
+   * for a rung of the ladder) and a corridor half width in coarse
+   * spacings. Just as approximate. */
+  public static CorridorQuery solve(Resolution resolution,
+      List<DShape> obstacles, Point source, double targetX, double targetY,
+      int factor, double halfWidth) {
+    int padding = resolution.getPadding();
+    return solve(new FmmSolver(new Grid(resolution, padding, padding)),
+        obstacles, source, targetX, targetY, factor, halfWidth, null);
+  }
+
+  /* As above, on the empty grid of a solver with no sources yet, which the
+   * obstacles are rasterized into. The fine marches go through the solver,
+   * so cancelling it stops them, and report to the listener, which may be
+   * null. Returns null if cancelled. Just as approximate. */
+  public static CorridorQuery solve(FmmSolver solver, List<DShape> obstacles,
+      Point source, double targetX, double targetY, int factor,
+      double halfWidth, Solver.ProgressListener listener) {
+    Grid grid = solver.getGrid();
+    ObstacleRasterizer.rasterize(grid, obstacles);
+
+    // coarse level: the same world and origin, every factor-th fine node
+    Grid coarseGrid = new Grid((grid.getDimX() + factor - 2) / factor + 1,
+        (grid.getDimY() + factor - 2) / factor + 1,
+        grid.getSpacing() * factor, grid.getOriginX(), grid.getOriginY());
+    ObstacleRasterizer.rasterize(coarseGrid, obstacles);
+
+    FmmSolver coarseSolver = new FmmSolver(coarseGrid);
+    Polyline coarsePath = null;
+    if (coarseSolver.addSource(source.x / factor, source.y / factor)) {
+      coarseSolver.march();
+      if (timeAt(coarseGrid, targetX, targetY) < Grid.INF)
+        coarsePath = new PathTracer(coarseGrid).tracePath(targetX, targetY);
+    }
+    int coarseAccepted = coarseSolver.getAcceptedCount();
+
+    if (coarsePath != null) {
+      boolean[] corridor = corridor(grid, coarsePath, source,
+          halfWidth * coarseGrid.getSpacing());
+
+      // block everything outside the corridor for the march, then restore
+      boolean[] masked = new boolean[grid.size()];
+      for (int id = 0; id < grid.size(); id++) {
+        if (!corridor[id] && grid.isFeasible(id)) {
+          masked[id] = true;
+          grid.setFeasible(id, false);
+        }
+      }
+
+      solver.addSource(source.x, source.y);
+      boolean done = solver.march(listener);
+      for (int id = 0; id < grid.size(); id++) {
+        if (masked[id])
+          grid.setFeasible(id, true);
+      }
+      if (!done)
+        return null;
+
+      if (timeAt(grid, targetX, targetY) < Grid.INF) {
+        Polyline path = new PathTracer(grid).tracePath(targetX, targetY);
+        if (!nearMask(grid, path, masked))
+          return new CorridorQuery(grid, path, coarseAccepted,
+              solver.getAcceptedCount(), false);
+      }
+      if (solver.isCancelled())
+        return null;
+      solver.reset();
+    }
+
+    // the corridor is no good; solve the whole domain
+    solver.addSource(source.x, source.y);
+    if (!solver.march(listener))
+      return null;
+    return new CorridorQuery(grid, new PathTracer(grid).tracePath(targetX,
+        targetY), coarseAccepted, solver.getAcceptedCount(), true);
+  }
+
+  public Grid getGrid() {
+    return grid;
+  }
+
+  // the fine path from the target back to the source
+  public Polyline getPath() {
+    return path;
+  }
+
+  public int getCoarseAcceptedCount() {
+    return coarseAccepted;
+  }
+
+  // cells accepted by the last fine march, in the corridor or not
+  public int getFineAcceptedCount() {
+    return fineAccepted;
+  }
+
+  // whether the corridor was invalidated and the whole domain solved
+  public boolean isFallback() {
+    return fallback;
+  }
+
+  /* The fine cells within a distance (in world units) of the coarse path,
+   * extended to the source node. */
+  private static boolean[] corridor(Grid grid, Polyline coarsePath,
+      Point source, double halfWidth) {
+    int spacing = grid.getSpacing();
+    double originX = grid.getOriginX();
+    double originY = grid.getOriginY();
+    boolean[] corridor = new boolean[grid.size()];
+
+    // path points in fine node units, ending at the source node
+    int points = coarsePath.size() + 1;
+    double[] xs = new double[points];
+    double[] ys = new double[points];
+    for (int i = 0; i < coarsePath.size(); i++) {
+      xs[i] = (coarsePath.getX(i) - originX) / spacing;
+      ys[i] = (coarsePath.getY(i) - originY) / spacing;
+    }
+    xs[points - 1] = source.x;
+    ys[points - 1] = source.y;
+
+    double radius = halfWidth / spacing;
+    for (int i = 0; i < points; i++) {
+      int j = Math.max(i - 1, 0); // a lone point is a zero length segment
+      markSegment(grid, corridor, xs[j], ys[j], xs[i], ys[i], radius);
+    }
+    return corridor;
+  }
+
+  // marks the nodes within a radius of a segment, all in node units
+  private static void markSegment(Grid grid, boolean[] corridor, double ax,
+      double ay, double bx, double by, double radius) {
+    int fromX = Math.max(0, (int) Math.floor(Math.min(ax, bx) - radius));
+    int toX = Math.min(grid.getDimX() - 1,
+        (int) Math.ceil(Math.max(ax, bx) + radius));
+    int fromY = Math.max(0, (int) Math.floor(Math.min(ay, by) - radius));
+    int toY = Math.min(grid.getDimY() - 1,
+        (int) Math.ceil(Math.max(ay, by) + radius));
+
+    double dx = bx - ax;
+    double dy = by - ay;
+    double lengthSq = dx * dx + dy * dy;
+    double radiusSq = radius * radius;
+
+    for (int y = fromY; y <= toY; y++) {
+      for (int x = fromX; x <= toX; x++) {
+        double t = lengthSq == 0 ? 0
+            : ((x - ax) * dx + (y - ay) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x - ax - t * dx;
+        double ey = y - ay - t * dy;
+        if (ex * ex + ey * ey <= radiusSq)
+          corridor[grid.index(x, y)] = true;
+      }
+    }
+  }
+
+  /* Whether a fine path passes within a cell of a masked node, checked
+   * every half spacing along it. */
+  private static boolean nearMask(Grid grid, Polyline path,
+      boolean[] masked) {
+    int spacing = grid.getSpacing();
+    for (int i = 1; i < path.size(); i++) {
+      double ax = path.getX(i - 1);
+      double ay = path.getY(i - 1);
+      double dx = path.getX(i) - ax;
+      double dy = path.getY(i) - ay;
+      int samples = (int) Math.ceil(2 * Math.hypot(dx, dy) / spacing) + 1;
+
+      for (int s = 0; s <= samples; s++) {
+        double x = (ax + dx * s / samples - grid.getOriginX()) / spacing;
+        double y = (ay + dy * s / samples - grid.getOriginY()) / spacing;
+        int nodeX = (int) Math.floor(x);
+        int nodeY = (int) Math.floor(y);
+
+        for (int ny = nodeY - 1; ny <= nodeY + 2; ny++) {
+          for (int nx = nodeX - 1; nx <= nodeX + 2; nx++) {
+            if (nx >= 0 && ny >= 0 && nx < grid.getDimX()
+                && ny < grid.getDimY() && masked[grid.index(nx, ny)])
+              return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /* the travel time at the node nearest a world position, or INF outside
+   * the grid */
+  private static double timeAt(Grid grid, double x, double y) {
+    int nodeX = (int) Math.round((x - grid.getOriginX()) / grid.getSpacing());
+    int nodeY = (int) Math.round((y - grid.getOriginY()) / grid.getSpacing());
+    if (nodeX < 0 || nodeY < 0 || nodeX >= grid.getDimX()
+        || nodeY >= grid.getDimY())
+      return Grid.INF;
+    return grid.getTime(nodeX, nodeY);
+  }
+}
@@ -3,14 +3,16 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JPanel;
 
@@ -25,6 +27,8 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
   private DShape trianglePalette; // triangle palette
 
   private List<DShape> obstacles; // set of obstacles in domain space
+  private ObstacleIndex obstacleIndex; // the obstacles, bucketed by location
+  private List<DShape> pressedObstacles; // obstacles being dragged
 
   private static final int PALETTE_WIDTH = 150; // width of the obstacle palette
   private boolean isFirstPosition; // first time drawing?
@@ -34,7 +38,7 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
   // Graphics2D g2d; //graphics handle
 
   // this is the stuff for the fast marching method
-  private static final double INF = 999999;
+  private static final double INF = Grid.INF;
   // private static final double straight = 1;
   // private static final double diagonal = 1.4142; // square root of 2
 
@@ -44,46 +48,26 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
   private int spacing;
   private int padding;
 
-  // sets for fmm
-  private List<Node> Fn;
-  private List<Node> Rn;
-  private List<Node> An;
-
-  private Node nodes[][]; // the actual node array
-
-  private class Node {
-    int x; // x coordinate
-    int y; // y coordinate
-    boolean isFeasible;
-    double travelTime;
-
-    // default constructor
-    Node() {
-      x = -1;
-      y = -1;
-      isFeasible = true;
-      travelTime = INF;
-    }
+  private Grid grid; // travel times, feasibility and state of every node
+  private PathTracer tracer; // paths and times on the painted field
+  private FieldImage fieldImage; // the painted field, drawn as an image
+  private Polyline path; // path painted on the field, or null to trace it
 
-    // explicit value constructor
-    Node(int newX, int newY) {
-      x = newX;
-      y = newY;
-      isFeasible = true;
-      travelTime = INF;
-    }
+  // pixels a stroke may reach outside the shape it outlines
+  private static final int STROKE_MARGIN = 2;
+  private FmmWorker worker; // solve running in the background, if any
 
-    // to string
-    public String toString() {
-      return ("Node " + x + " " + y);
-    }
+  private int engine; // FmmWorker.FAST_MARCHING or FAST_SWEEPING
+  private boolean isDynamic; // update the field locally as obstacles move
+  private boolean isPointToPoint; // solve only as far as the end object
+  private boolean isCorridor; // and go coarse to fine to get there
+  private boolean fieldPartial; // the painted field stops at its target
+  private Rectangle2D changedArea; // obstacle changes since the last solve
+  private int fieldStartX; // start node the painted field was solved from
+  private int fieldStartY;
 
-    // paints node in given graphics context
-    public void paintNode(Graphics2D g2d) {
-      g2d.fillOval(x * spacing + PALETTE_WIDTH + padding,
-          y * spacing + padding, 2, 2);
-    }
-  }
+  private static final long FIELD_CACHE_BYTES = 64L << 20;
+  private FieldCache fieldCache; // fields solved so far, to skip repeats
 
   public void setRectangleSize(ObjectSize size) {
     rectanglePalette.setSize(size.getWidth(), size.getHeight());
@@ -118,6 +102,8 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
 
     // obstacle set
     obstacles = new ArrayList<DShape>();
+    obstacleIndex = new ObstacleIndex();
+    pressedObstacles = new ArrayList<DShape>();
 
     // initial mesh/grid size
     dimX = 32;
@@ -128,14 +114,10 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
     isFirstPosition = true; // upon creation, start object is in first position
     isInPanel = true; // is the mouse inside the panel?
     doFmm = false;
-
-    // sets for fmm
-    Fn = new ArrayList<Node>();
-    Rn = new ArrayList<Node>();
-    An = new ArrayList<Node>();
+    engine = FmmWorker.FAST_MARCHING;
+    fieldCache = new FieldCache(FIELD_CACHE_BYTES);
 
     // initialize the nodes
-    nodes = new Node[dimX][dimY];
     init();
   }
 
@@ -164,8 +146,15 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
       isFirstPosition = false;
     }
 
-    // prints the existing obstacles
-    for (DShape temp : obstacles) {
+    // prints the existing obstacles, only those in the area being repainted
+    Rectangle clip = g2d.getClipBounds();
+    List<DShape> visible = obstacles;
+    if (clip != null) {
+      visible = obstacleIndex.query(new Rectangle2D.Double(clip.x
+          - STROKE_MARGIN, clip.y - STROKE_MARGIN, clip.width + 2
+          * STROKE_MARGIN, clip.height + 2 * STROKE_MARGIN));
+    }
+    for (DShape temp : visible) {
       temp.draw(g2d);
     }
 
@@ -191,20 +180,8 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
         .getHeight() - 1);
 
     // draw each node in level sets
-    for (int nodeX = 0; nodeX < dimX; nodeX++) {
-      for (int nodeY = 0; nodeY < dimY; nodeY++) {
-
-        double tempTime = nodes[nodeX][nodeY].travelTime;
-
-        if (Double.compare(tempTime, INF) == 0) {
-          g2d.setColor(Color.black);
-        } else {
-          g2d.setColor(tempTime % 10 < 5 ? Color.red : Color.blue);
-        }
-
-        nodes[nodeX][nodeY].paintNode(g2d);
-      }
-    }
+    g2d.drawImage(fieldImage.getImage(), PALETTE_WIDTH + padding, padding,
+        null);
 
     if (doFmm)
       findPath(g2d);
@@ -213,61 +190,42 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
     g2d.dispose();
   }
 
-  /* this function computes the feasibility of each node based on the obstacles */
-  public void computeFeasible() {
-    Rectangle2D box; // bounding box of each shape
-    int boxX; // coordinates of box
-    int boxY;
-    int boxWidth; // dimensions of box
-    int boxHeight;
-
-    for (DShape tempShape : obstacles) {
-      // get the dimensions of the bounding box
-      box = tempShape.getBoundingBox();
-      boxX = (int) box.getX();
-      boxY = (int) box.getY();
-      boxWidth = (int) box.getWidth();
-      boxHeight = (int) box.getHeight();
-
-      // convert to indicies of nodes in a certain range
-      boxWidth += boxX;
-      boxHeight += boxY;
-
-      // find the nodes
-      boxX = (boxX - PALETTE_WIDTH - padding) / spacing;
-      boxY = (boxY - padding) / spacing;
-      boxWidth = (boxWidth - PALETTE_WIDTH - padding) / spacing;
-      boxHeight = (boxHeight - padding) / spacing;
-
-      // restrict the dimensions to within the range of indicies
-      if (boxWidth > dimX - 1)
-        boxWidth = dimX - 1;
-      if (boxHeight > dimY - 1)
-        boxHeight = dimY - 1;
-      if (boxX < 1)
-        boxX = 1;
-      if (boxY < 1)
-        boxY = 1;
-
-      for (int x = boxX - 1; x < boxWidth + 1; x++) {
-        for (int y = boxY - 1; y < boxHeight + 1; y++) {
-          if (tempShape.contains(x * spacing + PALETTE_WIDTH + padding, y
-              * spacing + padding)) {
-            nodes[x][y].isFeasible = false;
-            Fn.remove(nodes[x][y]);
-          }
-        }
-      }
-    }
+  /* Selects the engine used by performFMM(), FmmWorker.FAST_MARCHING or
+   * FmmWorker.FAST_SWEEPING. */
+  public void setEngine(int newEngine) {
+    engine = newEngine;
   }
 
-  /* this function resets the feasibility of all the points in the domain */
-  public void resetFeasible() {
-    for (int x = 0; x < dimX; x++) {
-      for (int y = 0; y < dimY; y++) {
-        nodes[x][y].isFeasible = true;
-      }
-    }
+  /* Turns dynamic mode on or off. In dynamic mode, moving an obstacle
+   * updates the solved field in place of waiting for the next solve, and
+   * only the part of the field the move affects is marched again.
+   */
+  public void setDynamic(boolean dynamic) {
+    isDynamic = dynamic;
+
+    if (isDynamic && doFmm && changedArea != null && worker == null)
+      updateFMM();
+  }
+
+  /* Turns point-to-point mode on or off. In point-to-point mode a solve
+   * marches only as far as the end object, with the fast marching method
+   * whatever the engine, and is not cached. Moving the end object, or an
+   * obstacle in dynamic mode, solves again.
+   */
+  public void setPointToPoint(boolean pointToPoint) {
+    isPointToPoint = pointToPoint;
+  }
+
+  /* Makes a point-to-point solve go coarse to fine, through CorridorQuery,
+   * instead of using the heuristic. It marches less on a fine grid, but its
+   * path is approximate: it can miss a shorter route outside the corridor.
+   */
+  public void setCorridor(boolean corridor) {
+    isCorridor = corridor;
+  }
+
+  public FieldCache getFieldCache() {
+    return fieldCache;
   }
 
   public void setResolution(Resolution resolution) {
@@ -276,7 +234,9 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
     spacing = resolution.getSpacing();
     padding = resolution.getSpacing();
 
-    nodes = new Node[dimX][dimY];
+    cancelFMM();
+    doFmm = false;
+    changedArea = null;
     init();
     repaint();
   }
@@ -284,12 +244,14 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
   // Handles the event of the user pressing down the mouse button.
   public void mousePressed(MouseEvent e) {
     if (startObject.contains(e.getX(), e.getY())) {
+      Rectangle2D area = startObject.getBoundingBox();
       startObject.setLocation(e.getX() - startObject.getWidth() / 2, e.getY()
           - startObject.getHeight() / 2);
       startObject.isPressed = true;
+      area.add(startObject.getBoundingBox());
+      repaintArea(area);
     } else if (endObject.contains(e.getX(), e.getY())) {
-      endObject.setLocation(e.getX() - endObject.getWidth() / 2, e.getY()
-          - endObject.getHeight() / 2);
+      moveEnd(e.getX(), e.getY());
       endObject.isPressed = true;
     } else if (rectanglePalette.contains(e.getX(), e.getY())) {
       DShape temp = new DShape(rectanglePalette);
@@ -300,6 +262,10 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
       rectanglePalette.isPressed = true;
       temp.isPressed = true;
       obstacles.add(temp);
+      obstacleIndex.add(temp);
+      pressedObstacles.add(temp);
+      repaintArea(temp.getBoundingBox());
+      obstacleChanged(temp.getBoundingBox());
     } else if (ellipsePalette.contains(e.getX(), e.getY())) {
       DShape temp = new DShape(ellipsePalette);
       double tempX = temp.getWidth() / 2;
@@ -309,6 +275,10 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
       ellipsePalette.isPressed = true;
       temp.isPressed = true;
       obstacles.add(temp);
+      obstacleIndex.add(temp);
+      pressedObstacles.add(temp);
+      repaintArea(temp.getBoundingBox());
+      obstacleChanged(temp.getBoundingBox());
     } else if (trianglePalette.contains(e.getX(), e.getY())) {
       DShape temp = new DShape(trianglePalette);
       double tempX = temp.getWidth() / 2;
@@ -318,73 +288,116 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
       trianglePalette.isPressed = true;
       temp.isPressed = true;
       obstacles.add(temp);
+      obstacleIndex.add(temp);
+      pressedObstacles.add(temp);
+      repaintArea(temp.getBoundingBox());
+      obstacleChanged(temp.getBoundingBox());
     } else {
-      DShape temp;
-      for (int count = 0; count < obstacles.size(); count++) {
-        temp = ((DShape) obstacles.get(count));
-
-        if (temp.contains(e.getX(), e.getY())) {
-          temp.isPressed = true;
-
-          if (temp.type == DShape.TRIANGLE) {
-            temp.setLocation(e.getX(), e.getY());
-          } else {
-            temp.setLocation(e.getX() - temp.getWidth() / 2,
-                e.getY() - temp.getHeight() / 2);
-          }
+      for (DShape temp : obstacleIndex.hit(e.getX(), e.getY())) {
+        temp.isPressed = true;
+        pressedObstacles.add(temp);
+        Rectangle2D area = temp.getBoundingBox();
+
+        if (temp.type == DShape.TRIANGLE) {
+          temp.setLocation(e.getX(), e.getY());
+        } else {
+          temp.setLocation(e.getX() - temp.getWidth() / 2,
+              e.getY() - temp.getHeight() / 2);
         }
+        obstacleIndex.update(temp);
+
+        area.add(temp.getBoundingBox());
+        repaintArea(area);
+        obstacleChanged(area);
       }
-      resetFeasible();
     }
-    repaint();
   }
 
   // Handles the event of a user dragging the mouse while holding
   // down the mouse button.
   public void mouseDragged(MouseEvent e) {
     if (startObject.isPressed && isInPanel) {
+      cancelFMM();
+      Rectangle2D area = startObject.getBoundingBox();
       startObject.setLocation(e.getX() - startObject.getWidth() / 2, e.getY()
           - startObject.getHeight() / 2);
+      area.add(startObject.getBoundingBox());
+      repaintArea(area);
     } else if (endObject.isPressed && isInPanel) {
-      endObject.setLocation(e.getX() - endObject.getWidth() / 2, e.getY()
-          - endObject.getHeight() / 2);
+      moveEnd(e.getX(), e.getY());
     } else {
-      for (int count = 0; count < obstacles.size(); count++) {
-        DShape temp = ((DShape) obstacles.get(count));
-        if (temp.isPressed) {
-          if (temp.type == DShape.TRIANGLE) {
-            temp.setLocation(e.getX(), e.getY());
-          } else {
-            temp.setLocation(e.getX() - temp.getWidth() / 2,
-                e.getY() - temp.getHeight() / 2);
-          }
+      for (DShape temp : pressedObstacles) {
+        Rectangle2D area = temp.getBoundingBox();
+
+        if (temp.type == DShape.TRIANGLE) {
+          temp.setLocation(e.getX(), e.getY());
+        } else {
+          temp.setLocation(e.getX() - temp.getWidth() / 2,
+              e.getY() - temp.getHeight() / 2);
         }
+        obstacleIndex.update(temp);
+
+        // the obstacle moved out of its old box and into its new one
+        area.add(temp.getBoundingBox());
+        repaintArea(area);
+        obstacleChanged(area);
       }
     }
-    repaint();
+  }
+
+  /* Moves the end object to be centered on a point. The path to it is
+   * traced again, and only the boxes the object and the path cover before
+   * and after are repainted. */
+  private void moveEnd(int x, int y) {
+    Rectangle2D area = endObject.getBoundingBox();
+    if (doFmm && path != null)
+      area.add(path.toPath().getBounds2D());
+
+    endObject.setLocation(x - endObject.getWidth() / 2, y
+        - endObject.getHeight() / 2);
+    area.add(endObject.getBoundingBox());
+
+    path = null;
+    if (doFmm) {
+      path = tracer.tracePath(endObject.getX(), endObject.getY());
+      area.add(path.toPath().getBounds2D());
+    }
+    repaintArea(area);
+  }
+
+  // repaints an area of the panel, with room for the strokes around it
+  private void repaintArea(Rectangle2D area) {
+    repaint((int) Math.floor(area.getX()) - STROKE_MARGIN,
+        (int) Math.floor(area.getY()) - STROKE_MARGIN,
+        (int) Math.ceil(area.getWidth()) + 2 * STROKE_MARGIN + 1,
+        (int) Math.ceil(area.getHeight()) + 2 * STROKE_MARGIN + 1);
   }
 
   // Handles the event of a user releasing the mouse button.
   public void mouseReleased(MouseEvent e) {
+    boolean endDropped = endObject.isPressed;
     startObject.isPressed = false;
     endObject.isPressed = false;
     rectanglePalette.isPressed = false;
     ellipsePalette.isPressed = false;
     trianglePalette.isPressed = false;
 
-    for (int count = 0; count < obstacles.size(); count++) {
-      DShape temp = ((DShape) obstacles.get(count));
-      if (temp.isPressed) {
-        // released outside the appropriate range
-        if (e.getX() < PALETTE_WIDTH || !isInPanel) {
-          // rectangleObstacles.remove(count);
-          obstacles.remove(count);
-        }
+    for (DShape temp : pressedObstacles) {
+      // released outside the appropriate range
+      if (e.getX() < PALETTE_WIDTH || !isInPanel) {
+        obstacles.remove(temp);
+        obstacleIndex.remove(temp);
+        repaintArea(temp.getBoundingBox());
+        obstacleChanged(temp.getBoundingBox());
       }
       temp.isPressed = false;
     }
+    pressedObstacles.clear();
+
+    // the field may not reach where the end object was dropped
+    if (isPointToPoint && doFmm && endDropped)
+      performFMM(null);
     // computeFeasible();
-    repaint();
   }
 
   // This method is required by MouseListener.
@@ -418,319 +431,201 @@ class DomainPanel extends JPanel implements MouseListener, MouseMotionListener {
     tempY = (tempY) / spacing;
 
     if (tempX > 0 && tempY > 0)
-      return ("Travel time down and right of node: " + nodes[tempX][tempY]
-          + " " + interpoTime(x, y));
+      return ("Travel time down and right of node: Node " + tempX
+          + " " + tempY + " " + interpoTime(x, y));
     else
       return ("Out of bounds: " + INF);
   }
 
   // ///////////// This is the fmm code ////////////////////////////
 
-  // find node neighbors to a node in the An set.
-  public void neighbor(Node current) {
-   
-    // right
-    if (current.x < dimX - 1) {
-      moveFeasibleToRn(current.x + 1, current.y);
-    }
-
-    // left
-    if (current.x > 0) {
-      moveFeasibleToRn(current.x - 1, current.y);
-    }
-
-    // down
-    if (current.y < dimY - 1) {
-      moveFeasibleToRn(current.x, current.y + 1);
-    }
-
-    // up
-    if (current.y > 0) {
-      moveFeasibleToRn(current.x, current.y - 1);
-    }
-  }
-
-  private void moveFeasibleToRn(int x, int y) {
-    Node testnode;
-    testnode = nodes[x][y];
-    if (testnode.isFeasible == true && Fn.contains(testnode)) {
-      Rn.add(testnode);
-      Fn.remove(testnode);
-    }
-  }
-
   /* Initializes the nodes */
   public void init() {
-    // initialize nodes
-    for (int xloc = 0; xloc < dimX; xloc++) {
-      for (int yloc = 0; yloc < dimY; yloc++) {
-        nodes[xloc][yloc] = new Node(xloc, yloc);
-      }
-    }
-  }
-
-  /* Reset the nodes before performing the fmm. */
-  public void resetNodes() {
-    // clear out the sets
-    Fn.clear();
-    An.clear();
-    Rn.clear();
-
-    /* Start all nodes with infinite travel times. Add to Fn */
-    for (int x = 0; x < dimX; x++) {
-      for (int y = 0; y < dimY; y++) {
-        nodes[x][y].travelTime = INF;
-        Fn.add(nodes[x][y]);
-      }
-    }
-
-    // compute the feasibility of the nodes
-    computeFeasible();
+    grid = new Grid(dimX, dimY, spacing, PALETTE_WIDTH + padding, padding);
+    tracer = new PathTracer(grid);
+    fieldImage = new FieldImage(dimX, dimY, spacing);
+    fieldImage.update(grid);
+    path = null;
   }
 
   public double interpoTime(double x, double y) {
-    // find the node position
-    int nodeX = (int) (x - PALETTE_WIDTH - padding) / spacing;
-    int nodeY = (int) (y - padding) / spacing;
-
-    // find ratio from starting node position
-    double tempX = (x - (nodeX * spacing) - PALETTE_WIDTH - padding) / spacing;
-    double tempY = (y - nodeY * spacing - padding) / spacing;
-
-    double a;
-    double b;
-    double c;
-    double d;
-
-    if (nodeX > 0 && nodeY > 0)
-      d = nodes[nodeX][nodeY].travelTime;
-    else
-      return INF;
-
-    if (nodeX + 1 < dimX)
-      b = nodes[nodeX + 1][nodeY].travelTime - d;
-    else
-      return INF;
-
-    if (nodeY + 1 < dimY)
-      c = nodes[nodeX][nodeY + 1].travelTime - d;
-    else
-      return INF;
-    if (nodeX + 1 < dimX && nodeY + 1 < dimY)
-      a = nodes[nodeX + 1][nodeY + 1].travelTime - b - c - d;
-    else
-      return INF;
-
-    // return interpolated time
-    return a * tempX * tempY + b * tempX + c * tempY + d;
-  }
-
-  public Point2D.Double nextPoint(int x, int y, double deltaT) {
-    // find the node position
-    int nodeX = (int) (x - PALETTE_WIDTH - padding) / spacing;
-    int nodeY = ((int) y - padding) / spacing;
-
-    // find ratio from starting node position
-    double tempX = (x - (nodeX * spacing) - PALETTE_WIDTH - padding) / spacing;
-    double tempY = (y - nodeY * spacing - padding) / spacing;
-
-    // calculate coefficients
-    double a;
-    double b;
-    double c;
-    double d;
-
-    if (nodeX > 0 && nodeY > 0) {
-      d = nodes[nodeX][nodeY].travelTime;
-    }
-    else {
-      d = INF;
-    }
-
-    if (nodeX + 1 < dimX) {
-      b = nodes[nodeX + 1][nodeY].travelTime - d;
-    }
-    else {
-      b = INF;
-    }
-
-    if (nodeY + 1 < dimY) {
-      c = nodes[nodeX][nodeY + 1].travelTime - d;
-    }
-    else {
-      c = INF;
-    }
-
-    if (nodeX + 1 < dimX && nodeY + 1 < dimY) {
-      a = nodes[nodeX + 1][nodeY + 1].travelTime - b - c - d;
-    }
-    else {
-      a = INF;
-    }
-
-    tempX = (a * tempX + b);
-    tempY = (a * tempY + c);
-
-    return new Point2D.Double(tempX * deltaT
-        / Math.sqrt(tempX * tempX + tempY * tempY), tempY * deltaT
-        / Math.sqrt(tempX * tempX + tempY * tempY));
+    return tracer.interpoTime(x, y);
   }
 
   public void findPath(Graphics2D g2d) {
-    // keep drawing lines until we make it this far
-    double tolerance = spacing;
-    double deltaT = spacing / 2;
-    Point2D.Double point;
-    int iter = 0;
-    int maxIter = 5000;
-
-    int nextX = (int) endObject.getX();
-    int nextY = (int) endObject.getY();
-
-    int currX = nextX;
-    int currY = nextY;
+    if (path == null)
+      path = tracer.tracePath(endObject.getX(), endObject.getY());
 
-    while (interpoTime((double) nextX, (double) nextY) > tolerance
-        && iter < maxIter) {
-      currX = nextX;
-      currY = nextY;
+    g2d.setColor(Color.MAGENTA);
+    g2d.setStroke(new BasicStroke(2.0f));
+    g2d.draw(path.toPath());
+  }
 
-      point = nextPoint(currX, currY, deltaT);
+  /* Performs the fast marching method to calculate travel times of each node.
+   * The march runs on a background thread against a snapshot of the
+   * obstacles, and its grid replaces the painted one when it finishes. A
+   * solve that is still running is cancelled first. The listener, if any,
+   * gets the worker's progress and state changes.
+   *
+   * If the same field has been solved before, it is taken from the field
+   * cache instead and null is returned, since there is nothing to run.
+   */
+  public FmmWorker performFMM(PropertyChangeListener listener) {
+    cancelFMM();
 
-      nextX = currX - (int) point.getX();
-      nextY = currY - (int) point.getY();
+    // find the starting point
+    int startX = (int) startObject.getX();
+    int startY = (int) startObject.getY();
 
-      g2d.setColor(Color.MAGENTA);
-      g2d.setStroke(new BasicStroke(2.0f));
-      g2d.drawLine(nextX, nextY, currX, currY);
-      iter++;
-    }
-  }
+    // convert to indicies
+    startX = (startX - PALETTE_WIDTH) / spacing;
+    startY = (startY) / spacing;
 
-  public void computeTravelTime(Node current) {
-    Node left = new Node();
-    Node right = new Node();
-    Node up = new Node();
-    Node down = new Node();
-    Node minX = new Node();
-    Node minY = new Node();
-
-    double a = 0;
-    double b = 0;
-    double c = 0;
-
-    // find the neighbor with the smallest travel time
-    if (current.x > 0) {
-      left = nodes[current.x - 1][current.y];
-    }
-    if (current.x < dimX - 1) {
-      right = nodes[current.x + 1][current.y];
-    }
-    if (current.y > 0) {
-      up = nodes[current.x][current.y - 1];
-    }
-    if (current.y < dimY - 1) {
-      down = nodes[current.x][current.y + 1];
+    Grid next = new Grid(dimX, dimY, spacing, PALETTE_WIDTH + padding,
+        padding);
+    if (isPointToPoint) {
+      startWorker(next, null, startX, startY, null, listener);
+      return worker;
     }
 
-    if (An.contains(left) && left.travelTime < right.travelTime) {
-      minX = left;
-    } else if (An.contains(right)) {
-      minX = right;
-    }
+    FieldCache.Key key = FieldCache.key(obstacles, next, startX, startY);
+    if (showCached(key, startX, startY))
+      return null;
 
-    if (An.contains(up) && up.travelTime < down.travelTime) {
-      minY = up;
-    } else if (An.contains(down)) {
-      minY = down;
-    }
+    startWorker(next, key, startX, startY, null, listener);
+    return worker;
+  }
 
-    // there is a neighbor whose travel time we can compute
-    if (minX.travelTime < INF) {
-      a = (double) 1 / (spacing * spacing);
-      b = 2.0 * minX.travelTime / (double) (spacing * spacing);
-      c = (minX.travelTime * minX.travelTime) / (double) (spacing * spacing);
+  /* Updates the painted field for the obstacle changes made since it was
+   * solved. The update runs in the background on a copy of the field. A
+   * field solved point to point has nothing to update from, so it is solved
+   * again instead.
+   */
+  private void updateFMM() {
+    if (isPointToPoint || fieldPartial) {
+      performFMM(null);
+      return;
     }
 
-    if (minY.travelTime < INF) {
-      a = a + (double) 1 / (spacing * spacing);
-      b = b + 2.0 * minY.travelTime / (double) (spacing * spacing);
-      c = c + (minY.travelTime * minY.travelTime)
-          / (double) (spacing * spacing);
-    }
+    FieldCache.Key key = FieldCache.key(obstacles, grid, fieldStartX,
+        fieldStartY);
+    if (showCached(key, fieldStartX, fieldStartY))
+      return;
 
-    c = c - 1;
-    if (a != 0) {
-      current.travelTime = (b + Math.sqrt(b * b - 4 * a * c)) / (2 * a);
-    } else
-      current.travelTime = INF;
+    startWorker(new Grid(grid), key, fieldStartX, fieldStartY,
+        (Rectangle2D) changedArea.clone(), null);
   }
 
-  /* finds the minimum candidate travel time from the set in Rn */
-  public Node findMinTravelTime() {
-    double min = INF;
-    int index = -1;
-    Node quickestRoute = null;
-    Node temp = null;
-
-    for (int i = 0; i < Rn.size(); i++) {
-      temp = (Node) Rn.get(i);
-      computeTravelTime(temp);
-      if (temp.travelTime < min) {
-        index = i;
-        min = temp.travelTime;
-      }
-    }
-
-    quickestRoute = (Node) Rn.get(index);
-    if (quickestRoute != null) {
-      An.add(Rn.remove(index));
-      neighbor(quickestRoute);
-    }
+  // paints the cached field for a key, if there is one
+  private boolean showCached(FieldCache.Key key, int startX, int startY) {
+    Grid cached = fieldCache.get(key);
+    if (cached == null)
+      return false;
 
-    return quickestRoute;
+    showField(cached, startX, startY, false);
+    return true;
   }
 
-  /* Performs the fast marching method to calculate travel times of each node */
-  public void performFMM() {
+  /* makes a solved field the painted one; a partial field was only solved
+   * as far as the end object */
+  private void showField(Grid solved, int startX, int startY,
+      boolean partial) {
+    grid = solved;
+    fieldPartial = partial;
+    // dragging the end object traces the path again on every move, so
+    // precompute its descent
+    tracer = new PathTracer(GradientField.compute(solved));
+    fieldImage.update(solved);
+    path = null;
     doFmm = true;
+    changedArea = null;
+    fieldStartX = startX;
+    fieldStartY = startY;
 
-    // find the starting point
-    int startX = (int) startObject.getX();
-    int startY = (int) startObject.getY();
-
-    // convert to indicies
-    startX = (startX - PALETTE_WIDTH) / spacing;
-    startY = (startY) / spacing;
+    // draw it after completion
+    repaint();
+  }
 
-    // put the first node into Rn and remove it from Fn
-    Node begin = nodes[startX][startY];
+  /* Records that the obstacles changed inside an area. A running solve is
+   * out of date, so it is cancelled; in dynamic mode the painted field is
+   * then updated for the change.
+   */
+  private void obstacleChanged(Rectangle2D area) {
+    cancelFMM();
 
-    // if the beginning node is inside of an object, quit.
-    if (!begin.isFeasible) {
-      repaint();
-      return;
+    if (changedArea == null) {
+      changedArea = area;
+    } else {
+      changedArea.add(area);
     }
 
-    Fn.remove(begin);
-    An.add(begin);
-    begin.travelTime = 0; // initial travel time
-    neighbor(begin);
-
-    Node temp = findMinTravelTime();
+    if (isDynamic && doFmm)
+      updateFMM();
+  }
 
-    // continue calculating travel times until these sets are empty
-    while (!Fn.isEmpty() || !Rn.isEmpty()) {
-      temp = findMinTravelTime();
+  /* runs a worker that solves (or, given a changed area, updates) a grid,
+   * and caches the field under the key when it is done; with a null key
+   * the grid is solved point to point and not cached */
+  private void startWorker(Grid next, final FieldCache.Key key,
+      final int startX, final int startY, Rectangle2D area,
+      PropertyChangeListener listener) {
+    // copy the obstacles so they can be dragged during the solve; an
+    // update only needs the ones within a node of the changed area
+    List<DShape> nearby = obstacles;
+    if (area != null) {
+      nearby = obstacleIndex.query(new Rectangle2D.Double(area.getX()
+          - spacing, area.getY() - spacing, area.getWidth() + 2 * spacing,
+          area.getHeight() + 2 * spacing));
+    }
+
+    List<DShape> snapshot = new ArrayList<DShape>();
+    for (DShape temp : nearby) {
+      snapshot.add(new DShape(temp));
+    }
+
+    int solveEngine = key == null ? FmmWorker.FAST_MARCHING : engine;
+    worker = new FmmWorker(next, solveEngine, snapshot, startX, startY,
+        area) {
+      protected void done() {
+        if (isCancelled() || this != worker)
+          return;
+
+        Grid solved;
+        try {
+          solved = get();
+        } catch (InterruptedException | ExecutionException e) {
+          throw new IllegalStateException("Fast marching failed", e);
+        }
 
-      if (temp == null) {
-        System.out.println("There is a problem");
-        break;
+        // any later change to the obstacles would have cancelled this solve
+        worker = null;
+        if (key != null)
+          fieldCache.put(key, solved);
+        showField(solved, startX, startY, key == null);
       }
+    };
+
+    if (key == null) {
+      // the cell the end object is in
+      int x = (int) Math.floor((endObject.getX() - next.getOriginX())
+          / spacing);
+      int y = (int) Math.floor((endObject.getY() - next.getOriginY())
+          / spacing);
+      worker.setTarget(Math.max(0, Math.min(dimX - 2, x)),
+          Math.max(0, Math.min(dimY - 2, y)));
+      worker.setCorridor(isCorridor);
+    }
+
+    if (listener != null)
+      worker.addPropertyChangeListener(listener);
+    worker.execute();
+  }
 
+  /* Cancels the solve running in the background, if there is one. */
+  public void cancelFMM() {
+    if (worker != null) {
+      worker.cancelSolve();
+      worker = null;
     }
-
-    // draw it after completion
-    repaint();
   }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+/* A solved travel-time field, read only: a time and a feasibility flag for
+ * every node of a regular grid. Node (x, y) is cell y * dimX + x and sits
+ * at (originX + x * spacing, originY + y * spacing) in world coordinates.
+ * Grid is the field a solve writes into; FieldFile reads one straight off
+ * a mapped file.
+ */
+interface Field {
+  int getDimX();
+
+  int getDimY();
+
+  int getSpacing();
+
+  double getOriginX();
+
+  double getOriginY();
+
+  double getTime(int id);
+
+  double getTime(int x, int y);
+
+  boolean isFeasible(int id);
+}
@@ -0,0 +1,205 @@
+import java.awt.Point;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Bounded cache of solved travel-time fields, so asking for the same field
+ * again skips the march. A field is keyed by the obstacle layout, the grid
+ * it was solved on and its source cell; the engine is not part of the key,
+ * since both engines converge to the same field.
+ *
+ * The cache holds up to a number of bytes of fields and evicts the least
+ * recently used ones first. Cached grids are shared with every caller that
+ * gets them, so they must not be modified; copy one with new Grid(grid)
+ * before changing it. All methods are safe to call from any thread.
+ */
+class FieldCache {
+  private final long capacity; // bytes
+  private final LinkedHashMap<Key, Grid> fields;
+  private long bytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  FieldCache(long capacity) {
+    this.capacity = capacity;
+    fields = new LinkedHashMap<Key, Grid>(16, 0.75f, true);
+  }
+
+  /* The key of a field solved on the given grid layout (dimensions, spacing
+   * and origin) from a source cell. */
+  public static Key key(List<DShape> obstacles, Grid layout, int sourceX,
+      int sourceY) {
+    return new Key(signature(obstacles), layout.getDimX(), layout.getDimY(),
+        layout.getSpacing(), layout.getOriginX(), layout.getOriginY(),
+        sourceX, sourceY);
+  }
+
+  /* The key of the field FmmSolver.solve() returns for these arguments. */
+  public static Key key(List<DShape> obstacles, Resolution resolution,
+      Point source) {
+    return new Key(signature(obstacles), resolution.getDimX(),
+        resolution.getDimY(), resolution.getSpacing(),
+        resolution.getPadding(), resolution.getPadding(), source.x, source.y);
+  }
+
+  /* Returns the cached field for a single source, solving and caching it
+   * first if it is not there. */
+  public Grid solve(Resolution resolution, List<DShape> obstacles,
+      Point source) {
+    Key key = key(obstacles, resolution, source);
+    Grid grid = get(key);
+
+    if (grid == null) {
+      grid = FmmSolver.solve(resolution, obstacles, source);
+      put(key, grid);
+    }
+    return grid;
+  }
+
+  /* the cached field for a key, or null; counts as a hit or a miss */
+  public synchronized Grid get(Key key) {
+    Grid grid = fields.get(key);
+    if (grid == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return grid;
+  }
+
+  /* Caches a solved field, then evicts the least recently used fields until
+   * the cache fits its capacity again. A field bigger than the whole cache
+   * is not kept. */
+  public synchronized void put(Key key, Grid grid) {
+    Grid old = fields.put(key, grid);
+    if (old != null)
+      bytes -= footprint(key, old);
+    bytes += footprint(key, grid);
+
+    Iterator<Map.Entry<Key, Grid>> eldest = fields.entrySet().iterator();
+    while (bytes > capacity && eldest.hasNext()) {
+      Map.Entry<Key, Grid> entry = eldest.next();
+      bytes -= footprint(entry.getKey(), entry.getValue());
+      eldest.remove();
+      evictions++;
+    }
+  }
+
+  public synchronized void clear() {
+    fields.clear();
+    bytes = 0;
+  }
+
+  public synchronized int size() {
+    return fields.size();
+  }
+
+  // bytes held by the cached fields
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized String toString() {
+    return "Field cache: " + hits + " hits, " + misses + " misses, "
+        + evictions + " evictions, " + fields.size() + " fields in "
+        + (bytes + 1023) / 1024 + " of " + capacity / 1024 + " KB";
+  }
+
+  // approximate memory held by a cached field and its key
+  private static long footprint(Key key, Grid grid) {
+    long cells = grid.size();
+    return 8 * cells // times
+        + cells // states
+        + 8 * ((cells + 63) / 64) // feasibility bits
+        + 8 * key.obstacles.length + 128; // key and object headers
+  }
+
+  /* type and bounding box of every obstacle, which is all its cells depend
+   * on */
+  private static double[] signature(List<DShape> obstacles) {
+    double[] signature = new double[5 * obstacles.size()];
+    int i = 0;
+    for (DShape temp : obstacles) {
+      Rectangle2D box = temp.getBoundingBox();
+      signature[i++] = temp.type;
+      signature[i++] = box.getX();
+      signature[i++] = box.getY();
+      signature[i++] = box.getWidth();
+      signature[i++] = box.getHeight();
+    }
+    return signature;
+  }
+
+  /* Identifies a field by its obstacles, grid layout and source cell. */
+  static final class Key {
+    private final double[] obstacles;
+    private final int dimX;
+    private final int dimY;
+    private final int spacing;
+    private final double originX;
+    private final double originY;
+    private final int sourceX;
+    private final int sourceY;
+    private final int hash;
+
+    private Key(double[] obstacles, int dimX, int dimY, int spacing,
+        double originX, double originY, int sourceX, int sourceY) {
+      this.obstacles = obstacles;
+      this.dimX = dimX;
+      this.dimY = dimY;
+      this.spacing = spacing;
+      this.originX = originX;
+      this.originY = originY;
+      this.sourceX = sourceX;
+      this.sourceY = sourceY;
+
+      int h = Arrays.hashCode(obstacles);
+      h = 31 * h + dimX;
+      h = 31 * h + dimY;
+      h = 31 * h + spacing;
+      h = 31 * h + Double.hashCode(originX);
+      h = 31 * h + Double.hashCode(originY);
+      h = 31 * h + sourceX;
+      hash = 31 * h + sourceY;
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+
+      Key other = (Key) obj;
+      return hash == other.hash && dimX == other.dimX && dimY == other.dimY
+          && spacing == other.spacing && originX == other.originX
+          && originY == other.originY && sourceX == other.sourceX
+          && sourceY == other.sourceY
+          && Arrays.equals(obstacles, other.obstacles);
+    }
+  }
+}
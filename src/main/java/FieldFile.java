@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* Binary file format for solved travel-time fields, read back through a
+ * memory mapping. Opening a file maps it and reads only the header; travel
+ * times and feasibility are read from the mapping as they are asked for, so
+ * a large field opens instantly and several processes mapping the same
+ * file share its pages.
+ *
+ * Layout, little endian, every section 8 byte aligned:
+ *
+ *   int    magic "FMMF"
+ *   int    version
+ *   int    dimX, dimY, spacing
+ *   int    unused
+ *   double originX, originY (world position of node (0, 0), padding
+ *          included)
+ *   double travel time of each cell, in index order
+ *   long   feasibility bitset, one bit per cell, set if infeasible
+ */
+final class FieldFile implements Field {
+  private static final int MAGIC = 0x464D4D46; // "FMMF"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 40;
+
+  private final int dimX;
+  private final int dimY;
+  private final int spacing;
+  private final double originX;
+  private final double originY;
+
+  private final DoubleBuffer time; // views on the mapping
+  private final LongBuffer blocked;
+
+  private FieldFile(MappedByteBuffer map) throws IOException {
+    map.order(ByteOrder.LITTLE_ENDIAN);
+    if (map.capacity() < HEADER_BYTES || map.getInt(0) != MAGIC)
+      throw new IOException("Not a travel-time field file");
+    if (map.getInt(4) != VERSION)
+      throw new IOException("Unsupported field file version "
+          + map.getInt(4));
+
+    dimX = map.getInt(8);
+    dimY = map.getInt(12);
+    spacing = map.getInt(16);
+    originX = map.getDouble(24);
+    originY = map.getDouble(32);
+
+    long cells = (long) dimX * dimY;
+    if (dimX <= 0 || dimY <= 0 || map.capacity() != fileSize(cells))
+      throw new IOException("Truncated field file");
+
+    map.position(HEADER_BYTES);
+    time = map.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    map.position(HEADER_BYTES + 8 * (int) cells);
+    blocked = map.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+  }
+
+  /* Maps a field file read only. The mapping stays valid after this
+   * returns, until the field is garbage collected. */
+  public static FieldFile open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE)
+        throw new IOException("Field too large to map: " + channel.size()
+            + " bytes");
+      return new FieldFile(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size()));
+    } finally {
+      channel.close();
+    }
+  }
+
+  /* Writes the travel times and feasibility of a grid to a file, through a
+   * mapping of the new file. */
+  public static void save(Field grid, Path path) throws IOException {
+    int cells = grid.getDimX() * grid.getDimY();
+    long size = fileSize(cells);
+    if (size > Integer.MAX_VALUE)
+      throw new IOException("Field too large to map: " + size + " bytes");
+
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+          size);
+      map.order(ByteOrder.LITTLE_ENDIAN);
+
+      map.putInt(MAGIC);
+      map.putInt(VERSION);
+      map.putInt(grid.getDimX());
+      map.putInt(grid.getDimY());
+      map.putInt(grid.getSpacing());
+      map.putInt(0);
+      map.putDouble(grid.getOriginX());
+      map.putDouble(grid.getOriginY());
+
+      for (int id = 0; id < cells; id++) {
+        map.putDouble(grid.getTime(id));
+      }
+
+      long word = 0;
+      for (int id = 0; id < cells; id++) {
+        if (!grid.isFeasible(id))
+          word |= 1L << id;
+        if ((id & 63) == 63) {
+          map.putLong(word);
+          word = 0;
+        }
+      }
+      if ((cells & 63) != 0)
+        map.putLong(word);
+
+      map.force();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static long fileSize(long cells) {
+    return HEADER_BYTES + 8L * cells + 8L * ((cells + 63) >>> 6);
+  }
+
+  /* Copies the field into a new heap grid, with every reached cell
+   * accepted, for callers that want to change it. */
+  public Grid toGrid() {
+    Grid grid = new Grid(dimX, dimY, spacing, originX, originY);
+    for (int id = 0; id < grid.size(); id++) {
+      grid.setTime(id, getTime(id));
+      grid.setFeasible(id, isFeasible(id));
+      if (getTime(id) < Grid.INF)
+        grid.setState(id, Grid.ACCEPTED);
+    }
+    return grid;
+  }
+
+  public int getDimX() {
+    return dimX;
+  }
+
+  public int getDimY() {
+    return dimY;
+  }
+
+  public int getSpacing() {
+    return spacing;
+  }
+
+  public double getOriginX() {
+    return originX;
+  }
+
+  public double getOriginY() {
+    return originY;
+  }
+
+  public double getTime(int id) {
+    return time.get(id);
+  }
+
+  public double getTime(int x, int y) {
+    return time.get(y * dimX + x);
+  }
+
+  public boolean isFeasible(int id) {
+    return (blocked.get(id >>> 6) & (1L << id)) == 0;
+  }
+}
@@ -0,0 +1,76 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/* The travel-time field as the panel paints it, a dot per node in level
+ * set colors, kept in an image so a repaint is a single drawImage instead
+ * of a fillOval per node. The image is transparent between the dots and
+ * its top left pixel is node (0, 0).
+ *
+ * The pixels are written straight into the image's int[] buffer. update()
+ * recolors only the nodes whose color changed since the last update, so
+ * after a local re-solve only the dots in the changed region are redrawn.
+ */
+final class FieldImage {
+  private static final double INF = Grid.INF;
+
+  private static final int DOT = 2; // side of a node's dot, in pixels
+
+  // ARGB colors: unreached or blocked nodes, and alternating level sets
+  private static final int BLACK = 0xFF000000;
+  private static final int RED = 0xFFFF0000;
+  private static final int BLUE = 0xFF0000FF;
+
+  private final int dimX;
+  private final int dimY;
+  private final int spacing;
+  private final BufferedImage image;
+  private final int[] pixels; // the image's backing array
+  private final int[] colors; // color each node's dot has, 0 if not drawn
+
+  FieldImage(int dimX, int dimY, int spacing) {
+    this.dimX = dimX;
+    this.dimY = dimY;
+    this.spacing = spacing;
+    image = new BufferedImage((dimX - 1) * spacing + DOT, (dimY - 1)
+        * spacing + DOT, BufferedImage.TYPE_INT_ARGB);
+    pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    colors = new int[dimX * dimY];
+  }
+
+  public BufferedImage getImage() {
+    return image;
+  }
+
+  /* Recolors the dots of a field laid out like this image. Returns the
+   * number of nodes that changed color. */
+  public int update(Field field) {
+    int changed = 0;
+    int width = image.getWidth();
+
+    for (int nodeY = 0; nodeY < dimY; nodeY++) {
+      for (int nodeX = 0; nodeX < dimX; nodeX++) {
+        int id = nodeY * dimX + nodeX;
+        int color = color(field.getTime(id));
+        if (color == colors[id])
+          continue;
+
+        colors[id] = color;
+        changed++;
+        int corner = nodeY * spacing * width + nodeX * spacing;
+        for (int y = 0; y < DOT; y++) {
+          for (int x = 0; x < DOT; x++) {
+            pixels[corner + y * width + x] = color;
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  // the level set color of a travel time
+  private static int color(double time) {
+    if (time >= INF)
+      return BLACK;
+    return time % 10 < 5 ? RED : BLUE;
+  }
+}
@@ -0,0 +1,859 @@
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.List;
+
+/* Headless fast marching solver. It marches travel times over a Grid from
+ * one or more source cells and has no dependency on Swing, so it can run on
+ * any thread and on machines without a display.
+ *
+ * Typical use is solve(), which builds the grid from a Resolution, blocks
+ * the cells covered by the obstacles and marches from the sources. Callers
+ * that keep a grid around (like DomainPanel) can instead reset(), add
+ * sources and march() on their own grid.
+ *
+ * A march can report progress to a ProgressListener and can be stopped
+ * from another thread with cancel().
+ *
+ * With labeling turned on, every reached cell is also labeled with the
+ * source it is nearest to (the index of the source in the order it was
+ * added), which partitions the field into the Voronoi cells of the sources
+ * under travel time. Each cell takes the label of the neighbor its time
+ * came from, so cells right on a boundary can fall on either side.
+ *
+ * The default update is the first order upwind update over the four
+ * neighbors of a cell. For more accuracy on the same grid, setOrder() turns
+ * on the second order update (FMM2), which extrapolates from two accepted
+ * cells in a row where it can, and setDiagonal() adds the four diagonal
+ * neighbors as a second, rotated stencil; each cell takes the earlier of
+ * the two stencils' times. Both reduce the error of the field for some
+ * extra work per cell, see AccuracyReport in the benchmarks.
+ *
+ * Once a field is solved, update() re-marches just the part of it that
+ * depends on cells whose feasibility changed, which is what lets obstacles
+ * be dragged without solving the whole domain again.
+ *
+ * For a point-to-point query, setTarget() stops the march as soon as the
+ * four nodes around the target are accepted, which is all a path traced
+ * from there reads. Every cell earlier than the target is accepted by
+ * then; the rest of the grid is left far or in the band, and calling
+ * march() again carries on from where it stopped.
+ *
+ * setHeuristic() also skips cells that cannot be on the way to the
+ * target, using a lower bound on the time still to go from each cell
+ * (the straight line distance at the lowest cost). A first pass orders
+ * the band by time plus that bound, A*-style, and heads straight for the
+ * target. The upwind update is not a shortest path step, so that pass
+ * can accept a cell before a neighbor that would have lowered it; its
+ * times are too late, never too early. Its time at the target is an upper
+ * bound, though, and a second, ordinary pass from the same sources leaves
+ * far every cell whose time plus time to go exceeds it by more than a few
+ * steps. A cell left out can still feed the stencils on the way through a
+ * long chain of them, so the time at the target is not exactly a full
+ * march's, only within a small tolerance of it: on random scenes it stays
+ * under 1e-4 of a spacing, far below the error of the field itself.
+ */
+class FmmSolver implements Solver {
+  private static final double INF = Grid.INF;
+
+  // how many cells are accepted between checks for cancellation
+  private static final int CANCEL_INTERVAL = 1024;
+
+  // orders of the upwind update
+  static final int FIRST_ORDER = 1;
+  static final int SECOND_ORDER = 2;
+
+  private final Grid grid;
+  private final TrialHeap trial; // narrow band, keyed by tentative time
+
+  private volatile boolean cancelled;
+  private int accepted; // cells accepted since the last reset or update
+
+  private int[] sources; // every cell added as a source
+  private int sourceCount;
+  private int[] region; // cells invalidated by update(), allocated lazily
+  private boolean repairing; // update() is marching: recheck accepted cells
+  private int[] labels; // nearest source of each cell, null if not labeling
+
+  private int order; // FIRST_ORDER or SECOND_ORDER
+  private boolean diagonal; // use the diagonal stencil as well
+  private double axisAlpha; // upwind term found by axis(): 1 / distance
+  private double axisBeta; // and the time it extrapolates from
+
+  private int targetX; // cell whose nodes stop the march, -1 for none
+  private int targetY;
+  private boolean heuristic; // skip cells too late to reach the target
+  private double heuristicStep; // time to go per node of distance
+  private boolean ordered; // key the band by time plus time to go
+  private double bound; // far cells later than this with time to go stay so
+  private boolean pruned; // the last march left cells out by the bound
+
+  FmmSolver(Grid grid) {
+    this.grid = grid;
+    trial = new TrialHeap(grid.size());
+    sources = new int[1];
+    sourceCount = 0;
+    order = FIRST_ORDER;
+    targetX = -1;
+    bound = INF;
+  }
+
+  /* Solves a travel-time field for the given resolution, obstacles and
+   * source cells. Node (0, 0) sits at the padding of the resolution.
+   */
+  public static Grid solve(Resolution resolution, List<DShape> obstacles,
+      Point... sources) {
+    Grid grid = new Grid(resolution, resolution.getPadding(),
+        resolution.getPadding());
+    ObstacleRasterizer.rasterize(grid, obstacles);
+
+    FmmSolver solver = new FmmSolver(grid);
+    for (Point source : sources) {
+      solver.addSource(source.x, source.y);
+    }
+    solver.march();
+
+    return grid;
+  }
+
+  public Grid getGrid() {
+    return grid;
+  }
+
+  /* Selects the first order (the default) or second order update. Call it
+   * before the first source is added. */
+  public void setOrder(int newOrder) {
+    order = newOrder;
+  }
+
+  public int getOrder() {
+    return order;
+  }
+
+  /* Adds the diagonal neighbors to the stencil, or goes back to the four
+   * neighbor stencil. Call it before the first source is added. */
+  public void setDiagonal(boolean useDiagonal) {
+    diagonal = useDiagonal;
+  }
+
+  public boolean isDiagonal() {
+    return diagonal;
+  }
+
+  /* Turns on labeling of each cell with its nearest source. Call it before
+   * the first source is added. Cells that no source reaches are labeled -1.
+   */
+  public void setLabeling(boolean labeling) {
+    if (!labeling) {
+      labels = null;
+    } else if (labels == null) {
+      labels = new int[grid.size()];
+      Arrays.fill(labels, -1);
+    }
+  }
+
+  /* Stops march() once the nodes at the corners of a cell, (x, y) to
+   * (x + 1, y + 1), are accepted (those inside the grid and feasible).
+   * Pass the cell a target point falls in. */
+  public void setTarget(int x, int y) {
+    targetX = x;
+    targetY = y;
+  }
+
+  // marches the whole domain again
+  public void clearTarget() {
+    targetX = -1;
+  }
+
+  /* Marches towards the target in two passes, leaving out cells too late
+   * to be on the way to it (see above). The time at the target is then
+   * within a small tolerance of a full march's, not equal to it. It has no
+   * effect without a target. Cells left out are brought back if march() is
+   * called again once the target is cleared.
+   */
+  public void setHeuristic(boolean useHeuristic) {
+    heuristic = useHeuristic;
+  }
+
+  public boolean isHeuristic() {
+    return heuristic;
+  }
+
+  // the nearest source of each cell, or null if labeling is off
+  public int[] getLabels() {
+    return labels;
+  }
+
+  /* Clears travel times and the narrow band before a new solve. */
+  public void reset() {
+    trial.clear();
+    grid.reset();
+    if (labels != null)
+      Arrays.fill(labels, -1);
+    accepted = 0;
+    cancelled = false;
+    sourceCount = 0;
+    pruned = false;
+  }
+
+  /* Asks a running march to stop. Safe to call from any thread. */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  // number of cells accepted since the last reset or update
+  public int getAcceptedCount() {
+    return accepted;
+  }
+
+  /* Accepts a source cell with zero travel time and puts its neighbors in
+   * the narrow band. Returns false if the cell is inside an obstacle. The
+   * source is remembered either way, so update() can bring it back if its
+   * cell becomes feasible. Adding the source of an already solved grid
+   * again changes nothing.
+   */
+  public boolean addSource(int x, int y) {
+    int id = grid.index(x, y);
+
+    if (sourceCount == sources.length)
+      sources = Arrays.copyOf(sources, 2 * sourceCount);
+    sources[sourceCount++] = id;
+
+    if (!grid.isFeasible(id))
+      return false;
+
+    grid.setState(id, Grid.ACCEPTED);
+    grid.setTime(id, 0);
+    if (labels != null && labels[id] == -1)
+      labels[id] = sourceCount - 1;
+    accepted++;
+    neighbor(x, y);
+    return true;
+  }
+
+  /* Accepts cells in order of travel time until the narrow band is empty,
+   * or until the target is reached if there is one. Feasible far cells left
+   * over after a full march are cut off from every source. Returns false if
+   * the march was cancelled before it finished.
+   */
+  public boolean march() {
+    return march(null);
+  }
+
+  /* Marches like march(), reporting the accepted cell count to the listener
+   * about ten times over the course of a full solve.
+   */
+  public boolean march(ProgressListener listener) {
+    if (heuristic && targetX >= 0 && !targetReached())
+      return marchToTarget(listener);
+    return marchInOrder(listener);
+  }
+
+  /* The two passes of a march with a heuristic. If the first never reaches
+   * the target, it is cut off, and the field is marched again in time order
+   * to get it right.
+   */
+  private boolean marchToTarget(ProgressListener listener) {
+    heuristicStep = grid.getSpacing() * grid.getMinCost();
+
+    // the sources' neighbors went into the band keyed by time alone
+    ordered = true;
+    restart();
+    boolean done = marchInOrder(listener);
+    ordered = false;
+    double upper = targetTime();
+    restart();
+    if (!done)
+      return false;
+    if (upper >= INF)
+      return marchInOrder(listener);
+
+    // a cell on the way to the target, or in the upwind stencil of one, is
+    // within a couple of steps of it; four keep the cells further up the
+    // stencils too, which makes the time at the target hundreds of times
+    // closer to a full march's for up to an eighth more cells
+    bound = upper + 4 * heuristicStep;
+    done = marchInOrder(listener);
+    bound = INF;
+    pruned = true;
+
+    // should not happen, but a late target means the bound cut it off
+    if (done && targetTime() > upper) {
+      restart();
+      done = marchInOrder(listener);
+    }
+    return done;
+  }
+
+  private boolean marchInOrder(ProgressListener listener) {
+    int total = grid.size();
+    int interval = Math.max(total / 10, 1);
+    int nextReport = accepted + interval;
+
+    if (targetX >= 0 && targetReached())
+      return true;
+    if (pruned)
+      restoreBand();
+
+    int temp = acceptMin();
+    while (temp != -1) {
+      if (accepted % CANCEL_INTERVAL == 0 && cancelled)
+        return false;
+
+      if (targetX >= 0 && isTargetNode(temp) && targetReached())
+        break;
+
+      if (listener != null && accepted >= nextReport) {
+        listener.progress(accepted, total);
+        nextReport = accepted + interval;
+      }
+
+      temp = acceptMin();
+    }
+
+    if (listener != null)
+      listener.progress(accepted, total);
+    return !cancelled;
+  }
+
+  /* Re-marches a solved field after the feasibility of some cells changed.
+   * A cell that became blocked only changes the cells downstream of it,
+   * whose time came through it: the flood from it takes each neighbor whose
+   * stencil gives another time without the cells taken so far. That region
+   * is put back in the far set and seeded from its accepted border (and
+   * from any source inside it), along with the cells that became feasible.
+   * While it is marched again, every accepted cell next to one accepted
+   * goes back in the band if its time changes, so a freed cell only brings
+   * back the cells it reaches earlier. This gives the same field as solving
+   * from scratch.
+   *
+   * The grid must hold a complete solve, with its feasibility already
+   * updated, and the sources must have been added. Returns false if the
+   * march was cancelled.
+   */
+  public boolean update(int[] changed, ProgressListener listener) {
+    trial.clear();
+    accepted = 0;
+
+    if (region == null)
+      region = new int[grid.size()];
+
+    // collect the region, using the trial state to mark cells in it
+    int count = 0;
+    for (int id : changed) {
+      if (grid.isFeasible(id) || grid.getState(id) != Grid.ACCEPTED)
+        continue;
+
+      int head = count;
+      grid.setState(id, Grid.TRIAL);
+      region[count++] = id;
+
+      while (head < count) {
+        int cell = region[head++];
+        int x = grid.xOf(cell);
+        int y = grid.yOf(cell);
+
+        if (x < grid.getDimX() - 1)
+          count = invalidate(cell + 1, count);
+        if (x > 0)
+          count = invalidate(cell - 1, count);
+        if (y < grid.getDimY() - 1)
+          count = invalidate(cell + grid.getDimX(), count);
+        if (y > 0)
+          count = invalidate(cell - grid.getDimX(), count);
+
+        if (diagonal) {
+          for (int dy = -1; dy <= 1; dy += 2) {
+            for (int dx = -1; dx <= 1; dx += 2) {
+              if (inside(x + dx, y + dy))
+                count = invalidate(grid.index(x + dx, y + dy), count);
+            }
+          }
+        }
+
+        // second order extrapolates through the cells two away on each axis
+        if (order == SECOND_ORDER) {
+          for (int s = -2; s <= 2; s += 4) {
+            if (inside(x + s, y))
+              count = invalidate(grid.index(x + s, y), count);
+            if (inside(x, y + s))
+              count = invalidate(grid.index(x, y + s), count);
+          }
+        }
+      }
+    }
+
+    // put the region back in the far set
+    for (int i = 0; i < count; i++) {
+      grid.setTime(region[i], INF);
+      grid.setState(region[i], Grid.FAR);
+      if (labels != null)
+        labels[region[i]] = -1;
+    }
+
+    // from here on, accepting a cell rechecks its accepted neighbors
+    repairing = true;
+
+    // sources inside the region, or freed, start over at zero
+    for (int i = 0; i < sourceCount; i++) {
+      int id = sources[i];
+      if (grid.getState(id) == Grid.FAR && grid.isFeasible(id)) {
+        grid.setState(id, Grid.ACCEPTED);
+        grid.setTime(id, 0);
+        if (labels != null)
+          labels[id] = i;
+        accepted++;
+        neighbor(grid.xOf(id), grid.yOf(id));
+      }
+    }
+
+    // seed the narrow band from the accepted cells around the region, and
+    // around the freed cells
+    for (int i = 0; i < count + changed.length; i++) {
+      int id = i < count ? region[i] : changed[i - count];
+      if (grid.getState(id) == Grid.FAR && grid.isFeasible(id)) {
+        computeTravelTime(grid.xOf(id), grid.yOf(id));
+
+        if (grid.getTime(id) < INF) {
+          trial.insert(id, key(id));
+          grid.setState(id, Grid.TRIAL);
+        }
+      }
+    }
+
+    boolean done = marchInOrder(listener);
+    repairing = false;
+    return done;
+  }
+
+  /* Clears the march and accepts the sources again, keeping them. */
+  private void restart() {
+    trial.clear();
+    grid.reset();
+    if (labels != null)
+      Arrays.fill(labels, -1);
+    pruned = false;
+
+    int count = sourceCount;
+    sourceCount = 0;
+    for (int i = 0; i < count; i++) {
+      addSource(grid.xOf(sources[i]), grid.yOf(sources[i]));
+    }
+  }
+
+  /* puts back in the band the far cells next to accepted ones that a march
+   * with a heuristic left out */
+  private void restoreBand() {
+    pruned = false;
+    for (int id = 0; id < grid.size(); id++) {
+      if (grid.getState(id) == Grid.FAR && grid.isFeasible(id)) {
+        computeTravelTime(grid.xOf(id), grid.yOf(id));
+        if (grid.getTime(id) < INF) {
+          trial.insert(id, grid.getTime(id));
+          grid.setState(id, Grid.TRIAL);
+        }
+      }
+    }
+  }
+
+  /* adds a cell near the invalidated region to it if its time came through
+   * the region: if its stencil no longer gives that time without the
+   * region, whose cells are not accepted while it is collected. Sources,
+   * the only cells at time 0, stay. */
+  private int invalidate(int id, int count) {
+    double time = grid.getTime(id);
+    if (grid.getState(id) != Grid.ACCEPTED || time == 0)
+      return count;
+
+    computeTravelTime(grid.xOf(id), grid.yOf(id));
+    boolean through = grid.getTime(id) != time;
+    grid.setTime(id, time);
+
+    if (through) {
+      grid.setState(id, Grid.TRIAL);
+      region[count++] = id;
+    }
+    return count;
+  }
+
+  /* accepts the cell with the minimum candidate travel time in the narrow
+   * band and returns its index, or -1 if the band is empty */
+  public int acceptMin() {
+    if (trial.isEmpty())
+      return -1;
+
+    int id = trial.poll();
+    grid.setState(id, Grid.ACCEPTED);
+    if (labels != null)
+      labels[id] = nearestLabel(id);
+    accepted++;
+    neighbor(grid.xOf(id), grid.yOf(id));
+
+    return id;
+  }
+
+  /* a cell takes the label of its earliest accepted neighbor, which is the
+   * one its travel time came from */
+  private int nearestLabel(int id) {
+    int x = grid.xOf(id);
+    int y = grid.yOf(id);
+    int best = -1;
+
+    if (x < grid.getDimX() - 1)
+      best = earlierNeighbor(best, id + 1);
+    if (x > 0)
+      best = earlierNeighbor(best, id - 1);
+    if (y < grid.getDimY() - 1)
+      best = earlierNeighbor(best, id + grid.getDimX());
+    if (y > 0)
+      best = earlierNeighbor(best, id - grid.getDimX());
+
+    if (diagonal) {
+      for (int dy = -1; dy <= 1; dy += 2) {
+        for (int dx = -1; dx <= 1; dx += 2) {
+          if (inside(x + dx, y + dy))
+            best = earlierNeighbor(best, grid.index(x + dx, y + dy));
+        }
+      }
+    }
+
+    return best == -1 ? -1 : labels[best];
+  }
+
+  private int earlierNeighbor(int best, int id) {
+    if (grid.getState(id) != Grid.ACCEPTED || labels[id] == -1)
+      return best;
+    if (best == -1 || grid.getTime(id) < grid.getTime(best))
+      return id;
+    return best;
+  }
+
+  /* Find neighbors of a cell that was just accepted. Membership in the far,
+   * trial and accepted sets is the state byte of each cell, so every test
+   * and transition here is constant time.
+   */
+  private void neighbor(int x, int y) {
+    // right
+    if (x < grid.getDimX() - 1) {
+      moveFeasibleToTrial(x + 1, y);
+    }
+
+    // left
+    if (x > 0) {
+      moveFeasibleToTrial(x - 1, y);
+    }
+
+    // down
+    if (y < grid.getDimY() - 1) {
+      moveFeasibleToTrial(x, y + 1);
+    }
+
+    // up
+    if (y > 0) {
+      moveFeasibleToTrial(x, y - 1);
+    }
+
+    if (diagonal) {
+      for (int dy = -1; dy <= 1; dy += 2) {
+        for (int dx = -1; dx <= 1; dx += 2) {
+          if (inside(x + dx, y + dy))
+            moveFeasibleToTrial(x + dx, y + dy);
+        }
+      }
+    }
+
+    // while update() marches, the cells two away on each axis may
+    // extrapolate through this one in second order
+    if (repairing && order == SECOND_ORDER) {
+      for (int s = -2; s <= 2; s += 4) {
+        if (inside(x + s, y))
+          recheck(x + s, y);
+        if (inside(x, y + s))
+          recheck(x, y + s);
+      }
+    }
+  }
+
+  /* the narrow band key of a cell: its tentative time, plus the time to go
+   * in the first pass of a march with a heuristic */
+  private double key(int id) {
+    return ordered ? grid.getTime(id) + timeToGo(id) : grid.getTime(id);
+  }
+
+  /* a lower bound on the time from a cell to the nearest node of the target
+   * cell */
+  private double timeToGo(int id) {
+    int x = grid.xOf(id);
+    int y = grid.yOf(id);
+    int dx = x < targetX ? targetX - x : Math.max(x - targetX - 1, 0);
+    int dy = y < targetY ? targetY - y : Math.max(y - targetY - 1, 0);
+    return heuristicStep * Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /* the latest time at a node of the target cell, INF if one of them is not
+   * accepted */
+  private double targetTime() {
+    double latest = 0;
+    for (int y = targetY; y <= targetY + 1; y++) {
+      for (int x = targetX; x <= targetX + 1; x++) {
+        if (inside(x, y) && grid.isFeasible(x, y)) {
+          int id = grid.index(x, y);
+          latest = Math.max(latest, grid.getState(id) == Grid.ACCEPTED
+              ? grid.getTime(id) : INF);
+        }
+      }
+    }
+    return latest;
+  }
+
+  private boolean isTargetNode(int id) {
+    int x = grid.xOf(id) - targetX;
+    int y = grid.yOf(id) - targetY;
+    return x >= 0 && x <= 1 && y >= 0 && y <= 1;
+  }
+
+  // whether every node of the target cell is accepted or blocked
+  private boolean targetReached() {
+    for (int y = targetY; y <= targetY + 1; y++) {
+      for (int x = targetX; x <= targetX + 1; x++) {
+        if (inside(x, y) && grid.isFeasible(x, y)
+            && grid.getState(grid.index(x, y)) != Grid.ACCEPTED)
+          return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean inside(int x, int y) {
+    return x >= 0 && x < grid.getDimX() && y >= 0 && y < grid.getDimY();
+  }
+
+  /* Moves a far cell into the narrow band, or recomputes the tentative time
+   * of a cell already in it. This is only called when a neighbor of the cell
+   * has just been accepted, which is the only time its travel time can change.
+   * A far cell past the bound of a march with a heuristic stays far, and
+   * an accepted one is rechecked while update() marches.
+   */
+  private void moveFeasibleToTrial(int x, int y) {
+    int id = grid.index(x, y);
+    byte state = grid.getState(id);
+
+    if (state == Grid.TRIAL) {
+      computeTravelTime(x, y);
+      trial.update(id, key(id));
+    } else if (state == Grid.FAR && grid.isFeasible(id)) {
+      computeTravelTime(x, y);
+      if (bound < INF && grid.getTime(id) + timeToGo(id) > bound) {
+        grid.setTime(id, INF);
+        return;
+      }
+      trial.insert(id, key(id));
+      grid.setState(id, Grid.TRIAL);
+    } else if (state == Grid.ACCEPTED && repairing) {
+      recheck(x, y);
+    }
+  }
+
+  /* Puts an accepted cell back in the narrow band if the cells accepted
+   * since give it another time, or else takes its label again. Sources,
+   * the only cells at time 0, stay. */
+  private void recheck(int x, int y) {
+    int id = grid.index(x, y);
+    double old = grid.getTime(id);
+    if (grid.getState(id) != Grid.ACCEPTED || old == 0)
+      return;
+
+    computeTravelTime(x, y);
+    if (grid.getTime(id) != old) {
+      trial.insert(id, key(id));
+      grid.setState(id, Grid.TRIAL);
+    } else {
+      grid.setTime(id, old);
+      if (labels != null)
+        labels[id] = nearestLabel(id);
+    }
+  }
+
+  /* Upwind update of a cell from its accepted neighbors, with the order
+   * and stencil selected. */
+  private void computeTravelTime(int x, int y) {
+    if (order == FIRST_ORDER && !diagonal) {
+      computeFirstOrder(x, y);
+      return;
+    }
+
+    // time to cross one spacing at this cell
+    double step = grid.getSpacing() * grid.getCost(grid.index(x, y));
+
+    // the stencil along x and y
+    axis(x, y, 1, 0, step);
+    double alphaX = axisAlpha;
+    double betaX = axisBeta;
+    axis(x, y, 0, 1, step);
+    double t = solveAxes(alphaX, betaX, axisAlpha, axisBeta);
+
+    // the stencil along the diagonals, a spacing of sqrt(2) apart
+    if (diagonal) {
+      double diagonalStep = step * Math.sqrt(2);
+      axis(x, y, 1, 1, diagonalStep);
+      double alphaU = axisAlpha;
+      double betaU = axisBeta;
+      axis(x, y, 1, -1, diagonalStep);
+      t = Math.min(t, solveAxes(alphaU, betaU, axisAlpha, axisBeta));
+    }
+
+    grid.setTime(grid.index(x, y), t);
+  }
+
+  /* Finds the upwind term of the update along the direction (dx, dy),
+   * where it takes h to get from one neighbor to the next, from the
+   * earlier of the two accepted neighbors on that line. In second order,
+   * the time extrapolated from the neighbor and the one behind it is used
+   * where it applies; diagonals stay first order, since extrapolating along
+   * them from cells near a source undershoots. Leaves the term in axisAlpha
+   * and axisBeta; alpha is 0 if there is no accepted neighbor on the line.
+   */
+  private void axis(int x, int y, int dx, int dy, double h) {
+    axisAlpha = 0;
+    axisBeta = INF;
+    int side = 0;
+
+    for (int s = -1; s <= 1; s += 2) {
+      int nx = x + s * dx;
+      int ny = y + s * dy;
+      if (!inside(nx, ny))
+        continue;
+
+      int id = grid.index(nx, ny);
+      if (grid.getState(id) != Grid.ACCEPTED || grid.getTime(id) >= axisBeta)
+        continue;
+
+      // no cutting between two blocked cells on a diagonal
+      if (dx != 0 && dy != 0 && !grid.isFeasible(nx, y)
+          && !grid.isFeasible(x, ny))
+        continue;
+
+      axisAlpha = 1 / h;
+      axisBeta = grid.getTime(id);
+      side = s;
+    }
+
+    if (side == 0 || order != SECOND_ORDER || (dx != 0 && dy != 0))
+      return;
+
+    int fx = x + 2 * side * dx;
+    int fy = y + 2 * side * dy;
+    if (!inside(fx, fy))
+      return;
+
+    int id = grid.index(fx, fy);
+    if (grid.getState(id) == Grid.ACCEPTED && grid.getTime(id) <= axisBeta) {
+      axisBeta = (4 * axisBeta - grid.getTime(id)) / 3;
+      axisAlpha = 3 / (2 * h);
+    }
+  }
+
+  /* Solves the upwind equation for the terms (alpha, beta) of two
+   * directions, sum of alpha^2 (t - beta)^2 = 1, using both directions if
+   * the solution comes after both betas and the earlier one alone
+   * otherwise. A direction with alpha 0 has no term. */
+  private static double solveAxes(double alpha1, double beta1,
+      double alpha2, double beta2) {
+    double single1 = alpha1 > 0 ? beta1 + 1 / alpha1 : INF;
+    double single2 = alpha2 > 0 ? beta2 + 1 / alpha2 : INF;
+
+    if (alpha1 > 0 && alpha2 > 0) {
+      double a1 = alpha1 * alpha1;
+      double a2 = alpha2 * alpha2;
+      double a = a1 + a2;
+      double b = a1 * beta1 + a2 * beta2;
+      double c = a1 * beta1 * beta1 + a2 * beta2 * beta2 - 1;
+      double disc = b * b - a * c;
+
+      if (disc >= 0) {
+        double t = (b + Math.sqrt(disc)) / a;
+        if (t >= Math.max(beta1, beta2))
+          return t;
+      }
+    }
+
+    return Math.min(single1, single2);
+  }
+
+  /* First order upwind update of a cell from its accepted neighbors. */
+  private void computeFirstOrder(int x, int y) {
+    int dimX = grid.getDimX();
+    int dimY = grid.getDimY();
+    int spacing = grid.getSpacing();
+    int id = grid.index(x, y);
+    double minX = INF;
+    double minY = INF;
+
+    // find the accepted neighbor with the smallest travel time on each axis
+    double right = x < dimX - 1 ? grid.getTime(id + 1) : INF;
+    double down = y < dimY - 1 ? grid.getTime(id + dimX) : INF;
+
+    if (x > 0 && grid.getState(id - 1) == Grid.ACCEPTED
+        && grid.getTime(id - 1) < right) {
+      minX = grid.getTime(id - 1);
+    } else if (x < dimX - 1 && grid.getState(id + 1) == Grid.ACCEPTED) {
+      minX = right;
+    }
+
+    if (y > 0 && grid.getState(id - dimX) == Grid.ACCEPTED
+        && grid.getTime(id - dimX) < down) {
+      minY = grid.getTime(id - dimX);
+    } else if (y < dimY - 1 && grid.getState(id + dimX) == Grid.ACCEPTED) {
+      minY = down;
+    }
+
+    grid.setTime(id, upwindTime(minX, minY, spacing * grid.getCost(id)));
+  }
+
+  /* First order upwind travel time of a cell whose smallest known neighbor
+   * times are minX along x and minY along y (INF if there is none), where
+   * step is the time it takes to cross one spacing at the cell: the spacing
+   * times the cell's cost. This is shared with the fast sweeping engine so
+   * both solve the same equations.
+   */
+  static double upwindTime(double minX, double minY, double step) {
+    // the later neighbor arrives too late to help, use the earlier one alone.
+    // Marching never gets here, since it accepts both neighbors within one
+    // step of each other, but sweeping sees neighbors in any order.
+    if (Math.abs(minX - minY) >= step)
+      return Math.min(minX, minY) + step;
+
+    double a = 0;
+    double b = 0;
+    double c = 0;
+
+    // there is a neighbor whose travel time we can compute
+    if (minX < INF) {
+      a = (double) 1 / (step * step);
+      b = 2.0 * minX / (step * step);
+      c = (minX * minX) / (step * step);
+    }
+
+    if (minY < INF) {
+      a = a + (double) 1 / (step * step);
+      b = b + 2.0 * minY / (step * step);
+      c = c + (minY * minY) / (step * step);
+    }
+
+    c = c - 1;
+    if (a != 0) {
+      double disc = b * b - 4 * a * c;
+
+      // the two sided update has no solution, fall back to one side
+      if (disc < 0) {
+        return Math.min(minX, minY) + step;
+      } else {
+        return (b + Math.sqrt(disc)) / (2 * a);
+      }
+    } else
+      return INF;
+  }
+}
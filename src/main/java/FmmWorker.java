@@ -0,0 +1,134 @@
+import java.awt.Point;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import javax.swing.SwingWorker;
+
+/* Runs the fast marching method on a background thread. The worker solves
+ * into its own grid, so the grid being painted is never touched while the
+ * march is running; the caller swaps the result in from done().
+ *
+ * A full solve can use either engine: the fast marching method, or the
+ * parallel fast sweeping method on a fork-join pool.
+ *
+ * Given a changed area, the worker instead updates a copy of a solved grid:
+ * it refreshes feasibility inside the area and re-marches only the part of
+ * the field that depends on the cells that changed. Updates always use the
+ * fast marching method.
+ *
+ * A full solve with the fast marching method can be given a target cell:
+ * it then marches only towards the target, with FmmSolver's heuristic, and
+ * the rest of the field is left unsolved. With setCorridor() it goes
+ * coarse to fine through CorridorQuery instead, whose path is approximate.
+ *
+ * Progress is published as an "accepted" property change (the number of
+ * solved nodes), which listeners receive on the event dispatch thread.
+ */
+class FmmWorker extends SwingWorker<Grid, Integer> {
+  // solver engines
+  static final int FAST_MARCHING = 1;
+  static final int FAST_SWEEPING = 2;
+
+  private final Solver solver;
+  private final List<DShape> obstacles; // copies, safe from mouse drags
+  private final int startX;
+  private final int startY;
+  private final Rectangle2D changedArea; // null for a full solve
+  private int targetX = -1; // cell a full solve marches to, -1 for all
+  private int targetY;
+  private boolean corridor; // solve towards the target coarse to fine
+
+  /* Solves an empty grid from scratch with the given engine or, if
+   * changedArea is not null, updates a grid that was solved from the same
+   * start where the obstacles have changed inside changedArea.
+   */
+  FmmWorker(Grid grid, int engine, List<DShape> obstacles, int startX,
+      int startY, Rectangle2D changedArea) {
+    if (engine == FAST_SWEEPING && changedArea == null) {
+      solver = new FastSweepingSolver(grid);
+    } else {
+      solver = new FmmSolver(grid);
+    }
+
+    this.obstacles = obstacles;
+    this.startX = startX;
+    this.startY = startY;
+    this.changedArea = changedArea;
+  }
+
+  /* Solves only as far as a cell, for the path from a point in it. Call it
+   * before execute(), for a full solve with the fast marching method. */
+  public void setTarget(int x, int y) {
+    targetX = x;
+    targetY = y;
+  }
+
+  /* Solves towards the target with CorridorQuery rather than with the
+   * heuristic: less to march on a fine grid, but the path can miss a
+   * shorter route outside the corridor (see CorridorQuery.solve()). The
+   * corridor is traced from the middle of the target cell. */
+  public void setCorridor(boolean corridor) {
+    this.corridor = corridor;
+  }
+
+  // total number of nodes in the grid being solved
+  public int getTotal() {
+    return solver.getGrid().size();
+  }
+
+  /* Cancels the solve. The solver stops at its next cancellation check and
+   * done() is called with the worker in the cancelled state.
+   */
+  public void cancelSolve() {
+    solver.cancel();
+    cancel(false);
+  }
+
+  protected Grid doInBackground() {
+    Solver.ProgressListener listener = new Solver.ProgressListener() {
+      public void progress(int solved, int total) {
+        publish(solved);
+      }
+    };
+
+    if (changedArea != null) {
+      FmmSolver marcher = (FmmSolver) solver;
+      marcher.addSource(startX, startY);
+      int[] changed = ObstacleRasterizer.refresh(marcher.getGrid(), obstacles,
+          changedArea);
+      marcher.update(changed, listener);
+      return marcher.getGrid();
+    }
+
+    if (targetX >= 0 && corridor) {
+      Grid grid = solver.getGrid();
+      CorridorQuery.solve((FmmSolver) solver, obstacles,
+          new Point(startX, startY),
+          grid.getOriginX() + (targetX + 0.5) * grid.getSpacing(),
+          grid.getOriginY() + (targetY + 0.5) * grid.getSpacing(),
+          CorridorQuery.DEFAULT_FACTOR, CorridorQuery.DEFAULT_HALF_WIDTH,
+          listener);
+      return grid;
+    }
+
+    ObstacleRasterizer.rasterize(solver.getGrid(), obstacles);
+    if (targetX >= 0) {
+      FmmSolver marcher = (FmmSolver) solver;
+      marcher.setTarget(targetX, targetY);
+      marcher.setHeuristic(true);
+    }
+
+    // march from the start, unless it is inside of an object
+    if (solver.addSource(startX, startY)) {
+      solver.march(listener);
+    }
+
+    return solver.getGrid();
+  }
+
+  protected void process(List<Integer> chunks) {
+    if (!isCancelled()) {
+      firePropertyChange("accepted", null, chunks.get(chunks.size() - 1));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* The direction of steepest descent of a solved travel-time field at every
+ * node, as a unit vector in two float arrays. It is computed once after a
+ * solve, so each step of a path trace reads four nodes of it and
+ * normalizes once, instead of rebuilding the gradient from the times.
+ * Every path traced against the same field can share it.
+ *
+ * The gradient at a node is the central difference of its neighbours'
+ * times, or the one-sided difference where a neighbour is blocked or
+ * unreached. Blocked and unreached nodes, and the source, have no
+ * direction; cells touching one are left to PathTracer, which works the
+ * direction out from the times there.
+ */
+final class GradientField {
+  private static final double INF = Grid.INF;
+
+  // rows computed by one task of the parallel build
+  private static final int ROWS = 64;
+
+  private final Field field;
+  private final int dimX;
+  private final int dimY;
+  private final float[] dirX; // unit descent direction, 0 where there is none
+  private final float[] dirY;
+
+  private GradientField(Field field) {
+    this.field = field;
+    dimX = field.getDimX();
+    dimY = field.getDimY();
+    dirX = new float[dimX * dimY];
+    dirY = new float[dimX * dimY];
+  }
+
+  /* Computes the gradient of a solved field on the calling thread. */
+  public static GradientField compute(Field field) {
+    GradientField gradient = new GradientField(field);
+    gradient.computeRows(0, gradient.dimY);
+    return gradient;
+  }
+
+  /* Computes the gradient of a solved field, in bands of rows in parallel
+   * on a fork-join pool. */
+  public static GradientField compute(Field field, ForkJoinPool pool) {
+    GradientField gradient = new GradientField(field);
+    pool.invoke(gradient.new Rows(0, gradient.dimY));
+    return gradient;
+  }
+
+  // the field this is the gradient of
+  public Field getField() {
+    return field;
+  }
+
+  public float getDirX(int id) {
+    return dirX[id];
+  }
+
+  public float getDirY(int id) {
+    return dirY[id];
+  }
+
+  /* Unit direction of steepest descent at a world position, bilinear
+   * between the four nodes around it, into dir. Returns false if any of
+   * them has no direction, as next to an obstacle or at the source; the
+   * caller should work the direction out from the times there. */
+  public boolean descent(double x, double y, double[] dir) {
+    int spacing = field.getSpacing();
+    double fx = (x - field.getOriginX()) / spacing;
+    double fy = (y - field.getOriginY()) / spacing;
+    int nodeX = Math.max(0, Math.min((int) Math.floor(fx), dimX - 2));
+    int nodeY = Math.max(0, Math.min((int) Math.floor(fy), dimY - 2));
+    fx = Math.max(0, Math.min(fx - nodeX, 1));
+    fy = Math.max(0, Math.min(fy - nodeY, 1));
+
+    int id = nodeY * dimX + nodeX;
+    if (!hasDirection(id) || !hasDirection(id + 1)
+        || !hasDirection(id + dimX) || !hasDirection(id + dimX + 1)) {
+      dir[0] = 0;
+      dir[1] = 0;
+      return false;
+    }
+
+    double w00 = (1 - fx) * (1 - fy);
+    double w10 = fx * (1 - fy);
+    double w01 = (1 - fx) * fy;
+    double w11 = fx * fy;
+
+    double descentX = w00 * dirX[id] + w10 * dirX[id + 1]
+        + w01 * dirX[id + dimX] + w11 * dirX[id + dimX + 1];
+    double descentY = w00 * dirY[id] + w10 * dirY[id + 1]
+        + w01 * dirY[id + dimX] + w11 * dirY[id + dimX + 1];
+    double norm = Math.hypot(descentX, descentY);
+
+    if (norm == 0) {
+      dir[0] = 0;
+      dir[1] = 0;
+      return false;
+    }
+    dir[0] = descentX / norm;
+    dir[1] = descentY / norm;
+    return true;
+  }
+
+  private boolean hasDirection(int id) {
+    return dirX[id] != 0 || dirY[id] != 0;
+  }
+
+  /* Splits a band of rows in half until it is small enough to compute. */
+  private class Rows extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+
+    Rows(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    protected void compute() {
+      if (to - from <= ROWS) {
+        computeRows(from, to);
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Rows(from, mid), new Rows(mid, to));
+      }
+    }
+  }
+
+  private void computeRows(int from, int to) {
+    for (int y = from; y < to; y++) {
+      for (int x = 0; x < dimX; x++) {
+        int id = y * dimX + x;
+        double time = field.getTime(id);
+        if (time >= INF)
+          continue;
+
+        double gradX = difference(time, x > 0 ? field.getTime(id - 1) : INF,
+            x + 1 < dimX ? field.getTime(id + 1) : INF);
+        double gradY = difference(time,
+            y > 0 ? field.getTime(id - dimX) : INF,
+            y + 1 < dimY ? field.getTime(id + dimX) : INF);
+        double norm = Math.hypot(gradX, gradY);
+
+        if (norm > 0) {
+          dirX[id] = (float) (-gradX / norm);
+          dirY[id] = (float) (-gradY / norm);
+        }
+      }
+    }
+  }
+
+  /* Derivative along one axis from the times before and after a node:
+   * central where both are reached, one-sided where only one is. */
+  private static double difference(double time, double before,
+      double after) {
+    if (before < INF && after < INF)
+      return (after - before) / 2;
+    if (after < INF)
+      return after - time;
+    if (before < INF)
+      return time - before;
+    return 0;
+  }
+}
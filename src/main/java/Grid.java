@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/* Flat storage for the fast marching grid. Every cell is addressed by the
+ * index y * dimX + x into primitive arrays: travel times in a double[],
+ * feasibility in a packed bitset and the Far/Trial/Accepted state in a
+ * byte[], so there is no per-cell object.
+ *
+ * The grid also knows where it sits in world coordinates: node (x, y) is at
+ * (originX + x * spacing, originY + y * spacing).
+ *
+ * Travel is at unit speed everywhere unless a cost map is set: the time it
+ * takes to cross one unit of distance at each cell, in a float[] (see
+ * SpeedMap). A cell with an infinite cost can not be crossed at all, and
+ * stays blocked whatever the obstacles do.
+ *
+ * TiledGrid keeps the same cells in lazily allocated tiles instead, for
+ * grids too big to store densely, and OffHeapGrid keeps them outside the
+ * Java heap.
+ */
+class Grid implements Field {
+  // travel time of a cell no front has reached; infinite rather than a
+  // large constant, so no real time can reach it on a slow cost map
+  static final double INF = Double.POSITIVE_INFINITY;
+
+  // fast marching states
+  static final byte FAR = 0;
+  static final byte TRIAL = 1;
+  static final byte ACCEPTED = 2;
+
+  private final int dimX;
+  private final int dimY;
+  private final int spacing; // distance between nodes
+  private final double originX; // world position of node (0, 0)
+  private final double originY;
+
+  private final double[] time; // travel time of each cell
+  private final long[] blocked; // one bit per cell, set if infeasible
+  private final byte[] state; // fast marching state of each cell
+  private float[] cost; // time per unit distance of each cell, null if 1
+
+  Grid(int dimX, int dimY, int spacing, double originX, double originY) {
+    this(dimX, dimY, spacing, originX, originY, true);
+  }
+
+  /* A grid with the dense arrays, or without them for a subclass that
+   * stores its cells some other way and overrides every accessor of them.
+   */
+  Grid(int dimX, int dimY, int spacing, double originX, double originY,
+      boolean dense) {
+    this.dimX = dimX;
+    this.dimY = dimY;
+    this.spacing = spacing;
+    this.originX = originX;
+    this.originY = originY;
+
+    if (dense) {
+      time = new double[dimX * dimY];
+      blocked = new long[(dimX * dimY + 63) >>> 6];
+      state = new byte[dimX * dimY];
+      Arrays.fill(time, INF);
+    } else {
+      time = null;
+      blocked = null;
+      state = null;
+    }
+  }
+
+  // copy of another dense grid, including its travel times and states
+  Grid(Grid other) {
+    if (other.time == null)
+      throw new IllegalArgumentException("Only a dense grid can be copied");
+
+    dimX = other.dimX;
+    dimY = other.dimY;
+    spacing = other.spacing;
+    originX = other.originX;
+    originY = other.originY;
+
+    time = other.time.clone();
+    blocked = other.blocked.clone();
+    state = other.state.clone();
+    cost = other.cost; // never changed in place, so it can be shared
+  }
+
+  // grid laid out by a resolution
+  Grid(Resolution resolution, double originX, double originY) {
+    this(resolution.getDimX(), resolution.getDimY(), resolution.getSpacing(),
+        originX, originY);
+  }
+
+  public int getDimX() {
+    return dimX;
+  }
+
+  public int getDimY() {
+    return dimY;
+  }
+
+  public int getSpacing() {
+    return spacing;
+  }
+
+  public double getOriginX() {
+    return originX;
+  }
+
+  public double getOriginY() {
+    return originY;
+  }
+
+  // number of cells
+  public int size() {
+    return dimX * dimY;
+  }
+
+  public int index(int x, int y) {
+    return y * dimX + x;
+  }
+
+  public int xOf(int id) {
+    return id % dimX;
+  }
+
+  public int yOf(int id) {
+    return id / dimX;
+  }
+
+  public double getTime(int id) {
+    return time[id];
+  }
+
+  public double getTime(int x, int y) {
+    return time[y * dimX + x];
+  }
+
+  public void setTime(int id, double t) {
+    time[id] = t;
+  }
+
+  public boolean isFeasible(int id) {
+    return (blocked[id >>> 6] & (1L << id)) == 0;
+  }
+
+  public boolean isFeasible(int x, int y) {
+    return isFeasible(y * dimX + x);
+  }
+
+  public void setFeasible(int id, boolean feasible) {
+    if (feasible) {
+      blocked[id >>> 6] &= ~(1L << id);
+    } else {
+      blocked[id >>> 6] |= 1L << id;
+    }
+  }
+
+  /* blocks the run of cells fromX..toX (inclusive) of row y, a word of the
+   * bitset at a time */
+  public void blockSpan(int y, int fromX, int toX) {
+    int from = y * dimX + fromX;
+    int to = y * dimX + toX;
+
+    int fromWord = from >>> 6;
+    int toWord = to >>> 6;
+    long fromMask = -1L << from; // bits at or above from
+    long toMask = -1L >>> (63 - (to & 63)); // bits at or below to
+
+    if (fromWord == toWord) {
+      blocked[fromWord] |= fromMask & toMask;
+      return;
+    }
+
+    blocked[fromWord] |= fromMask;
+    for (int word = fromWord + 1; word < toWord; word++) {
+      blocked[word] = -1L;
+    }
+    blocked[toWord] |= toMask;
+  }
+
+  // time it takes to cross one unit of distance at a cell
+  public float getCost(int id) {
+    return cost == null ? 1 : cost[id];
+  }
+
+  /* Sets the cost of every cell, or goes back to unit cost with null. The
+   * array is kept, not copied, and must not be changed afterwards. Cells
+   * with an infinite cost are blocked. Cells the old map blocked are not
+   * unblocked: when replacing or dropping a map, call resetFeasible() and
+   * rasterize the obstacles again.
+   */
+  public void setCosts(float[] newCost) {
+    if (newCost != null && newCost.length != size())
+      throw new IllegalArgumentException("Cost map has " + newCost.length
+          + " cells, the grid has " + size());
+
+    cost = newCost;
+    blockImpassable();
+  }
+
+  // the lowest cost of any cell, found by a pass over the cost map
+  public float getMinCost() {
+    if (cost == null)
+      return 1;
+
+    float min = Float.MAX_VALUE;
+    for (float c : cost) {
+      min = Math.min(min, c);
+    }
+    return min;
+  }
+
+  // whether the cost map leaves a cell passable
+  public boolean isPassable(int id) {
+    return cost == null || cost[id] != Float.POSITIVE_INFINITY;
+  }
+
+  void blockImpassable() {
+    if (cost == null)
+      return;
+
+    for (int id = 0; id < cost.length; id++) {
+      if (cost[id] == Float.POSITIVE_INFINITY)
+        setFeasible(id, false);
+    }
+  }
+
+  public byte getState(int id) {
+    return state[id];
+  }
+
+  public void setState(int id, byte s) {
+    state[id] = s;
+  }
+
+  /* Puts every cell back in the far set with an infinite travel time. Far is
+   * just the zero state, so this is two bulk fills rather than a set insert
+   * per cell. Feasibility is left alone.
+   */
+  public void reset() {
+    Arrays.fill(time, INF);
+    Arrays.fill(state, FAR);
+  }
+
+  // marks every cell as feasible, except where the cost map forbids it
+  public void resetFeasible() {
+    Arrays.fill(blocked, 0L);
+    blockImpassable();
+  }
+}
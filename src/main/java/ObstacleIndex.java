@@ -0,0 +1,139 @@
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Uniform bucket grid over the bounding boxes of the obstacles, so that
+ * point hits and area queries only look at the obstacles nearby instead of
+ * every obstacle in the domain. Each obstacle is listed in every bucket its
+ * bounding box overlaps; an obstacle that moves or resizes has to be
+ * updated so it is filed under its new box.
+ */
+class ObstacleIndex {
+  // side of the square buckets, in pixels
+  static final int BUCKET = 64;
+
+  private final Map<Long, List<DShape>> buckets;
+  private final Map<DShape, Rectangle2D> boxes; // box each shape is filed by
+
+  ObstacleIndex() {
+    buckets = new HashMap<Long, List<DShape>>();
+    boxes = new HashMap<DShape, Rectangle2D>();
+  }
+
+  public int size() {
+    return boxes.size();
+  }
+
+  public boolean contains(DShape shape) {
+    return boxes.containsKey(shape);
+  }
+
+  public void add(DShape shape) {
+    if (boxes.containsKey(shape))
+      return;
+
+    Rectangle2D box = shape.getBoundingBox();
+    boxes.put(shape, box);
+
+    for (int by = bucketOf(box.getMinY()); by <= bucketOf(box.getMaxY());
+        by++) {
+      for (int bx = bucketOf(box.getMinX()); bx <= bucketOf(box.getMaxX());
+          bx++) {
+        Long key = key(bx, by);
+        List<DShape> bucket = buckets.get(key);
+        if (bucket == null) {
+          bucket = new ArrayList<DShape>(4);
+          buckets.put(key, bucket);
+        }
+        bucket.add(shape);
+      }
+    }
+  }
+
+  public void remove(DShape shape) {
+    Rectangle2D box = boxes.remove(shape);
+    if (box == null)
+      return;
+
+    for (int by = bucketOf(box.getMinY()); by <= bucketOf(box.getMaxY());
+        by++) {
+      for (int bx = bucketOf(box.getMinX()); bx <= bucketOf(box.getMaxX());
+          bx++) {
+        Long key = key(bx, by);
+        List<DShape> bucket = buckets.get(key);
+        bucket.remove(shape);
+        if (bucket.isEmpty())
+          buckets.remove(key);
+      }
+    }
+  }
+
+  // re-files a shape after it has moved or changed size
+  public void update(DShape shape) {
+    remove(shape);
+    add(shape);
+  }
+
+  public void clear() {
+    buckets.clear();
+    boxes.clear();
+  }
+
+  /* the obstacles that contain the point */
+  public List<DShape> hit(int x, int y) {
+    List<DShape> found = new ArrayList<DShape>();
+    List<DShape> bucket = buckets.get(key(bucketOf(x), bucketOf(y)));
+    if (bucket == null)
+      return found;
+
+    for (DShape temp : bucket) {
+      if (temp.contains(x, y))
+        found.add(temp);
+    }
+    return found;
+  }
+
+  /* The obstacles whose bounding boxes overlap the area (edges included).
+   * Each one is listed once. */
+  public List<DShape> query(Rectangle2D area) {
+    List<DShape> found = new ArrayList<DShape>();
+
+    int minBX = bucketOf(area.getMinX());
+    int minBY = bucketOf(area.getMinY());
+    int maxBX = bucketOf(area.getMaxX());
+    int maxBY = bucketOf(area.getMaxY());
+
+    for (int by = minBY; by <= maxBY; by++) {
+      for (int bx = minBX; bx <= maxBX; bx++) {
+        List<DShape> bucket = buckets.get(key(bx, by));
+        if (bucket == null)
+          continue;
+
+        for (DShape temp : bucket) {
+          Rectangle2D box = boxes.get(temp);
+          if (box.getMaxX() < area.getMinX() || box.getMinX() > area.getMaxX()
+              || box.getMaxY() < area.getMinY()
+              || box.getMinY() > area.getMaxY())
+            continue;
+
+          // a shape in several buckets is reported from the first bucket
+          // the query and the shape have in common
+          if (bx == Math.max(minBX, bucketOf(box.getMinX()))
+              && by == Math.max(minBY, bucketOf(box.getMinY())))
+            found.add(temp);
+        }
+      }
+    }
+    return found;
+  }
+
+  private static int bucketOf(double v) {
+    return (int) Math.floor(v / BUCKET);
+  }
+
+  private static Long key(int bx, int by) {
+    return ((long) bx << 32) | (by & 0xffffffffL);
+  }
+}
@@ -0,0 +1,307 @@
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+
+/* Marks the grid cells covered by obstacles as infeasible. Only the
+ * java.awt.geom shape tests are used, which work in headless mode.
+ *
+ * Shapes are scan converted a row of nodes at a time: each row of a shape
+ * is turned into runs of covered nodes, which are blocked a word of the
+ * bitset at a time. A node is covered exactly when DShape.contains() holds
+ * at its (truncated) pixel position; the span ends are derived from the
+ * same arithmetic as the java.awt.geom tests, so the mask is unchanged.
+ */
+class ObstacleRasterizer {
+
+  /* receives the runs fromX..toX (inclusive) of covered nodes in row y */
+  private interface SpanSink {
+    void span(int y, int fromX, int toX);
+  }
+
+  private ObstacleRasterizer() {
+  }
+
+  /* blocks every node of the grid that lies inside one of the obstacles */
+  public static void rasterize(Grid grid, List<DShape> obstacles) {
+    for (DShape tempShape : obstacles) {
+      rasterize(grid, tempShape);
+    }
+  }
+
+  /* blocks every node of the grid that lies inside the shape */
+  public static void rasterize(final Grid grid, DShape tempShape) {
+    scan(grid, tempShape, 0, 0, grid.getDimX() - 1, grid.getDimY() - 1,
+        new SpanSink() {
+          public void span(int y, int fromX, int toX) {
+            grid.blockSpan(y, fromX, toX);
+          }
+        });
+  }
+
+  /* Recomputes the feasibility of the nodes inside a world space area from
+   * all of the obstacles (and the grid's cost map), and returns the indices
+   * of the nodes whose feasibility changed. The area should cover
+   * everywhere an obstacle was added, removed or moved since the grid was
+   * last rasterized.
+   */
+  public static int[] refresh(Grid grid, List<DShape> obstacles,
+      Rectangle2D area) {
+    int spacing = grid.getSpacing();
+
+    // nodes within the area, clipped to the grid
+    final int minX = Math.max((int) Math.floor((area.getMinX()
+        - grid.getOriginX()) / spacing), 0);
+    final int minY = Math.max((int) Math.floor((area.getMinY()
+        - grid.getOriginY()) / spacing), 0);
+    int maxX = Math.min((int) Math.ceil((area.getMaxX() - grid.getOriginX())
+        / spacing), grid.getDimX() - 1);
+    int maxY = Math.min((int) Math.ceil((area.getMaxY() - grid.getOriginY())
+        / spacing), grid.getDimY() - 1);
+
+    if (minX > maxX || minY > maxY)
+      return new int[0];
+
+    // the obstacles' mask over the area, one entry per node
+    final int width = maxX - minX + 1;
+    final boolean[] covered = new boolean[width * (maxY - minY + 1)];
+
+    SpanSink sink = new SpanSink() {
+      public void span(int y, int fromX, int toX) {
+        int row = (y - minY) * width - minX;
+        Arrays.fill(covered, row + fromX, row + toX + 1, true);
+      }
+    };
+
+    for (DShape tempShape : obstacles) {
+      scan(grid, tempShape, minX, minY, maxX, maxY, sink);
+    }
+
+    int[] changed = new int[16];
+    int count = 0;
+
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        int id = grid.index(x, y);
+        boolean feasible = !covered[(y - minY) * width + x - minX]
+            && grid.isPassable(id);
+
+        if (grid.isFeasible(id) != feasible) {
+          grid.setFeasible(id, feasible);
+
+          if (count == changed.length)
+            changed = Arrays.copyOf(changed, 2 * count);
+          changed[count++] = id;
+        }
+      }
+    }
+
+    return Arrays.copyOf(changed, count);
+  }
+
+  /* Emits the runs of nodes covered by the shape within the node window
+   * minX..maxX by minY..maxY. */
+  private static void scan(Grid grid, DShape tempShape, int minX, int minY,
+      int maxX, int maxY, SpanSink sink) {
+    if (tempShape.type == DShape.TRIANGLE) {
+      scanPolygon(grid, tempShape.xpnts, tempShape.ypnts, tempShape.pntCount,
+          minX, minY, maxX, maxY, sink);
+    } else if (tempShape.type == DShape.ELLIPSE) {
+      scanEllipse(grid, tempShape.getBoundingBox(), minX, minY, maxX, maxY,
+          sink);
+    } else {
+      scanRectangle(grid, tempShape.getBoundingBox(), minX, minY, maxX, maxY,
+          sink);
+    }
+  }
+
+  /* Rectangle2D.contains(): x0 <= x < x0 + w and y0 <= y < y0 + h */
+  private static void scanRectangle(Grid grid, Rectangle2D box, int minX,
+      int minY, int maxX, int maxY, SpanSink sink) {
+    int spacing = grid.getSpacing();
+    double originX = grid.getOriginX();
+    double originY = grid.getOriginY();
+
+    int fromX = Math.max(firstNode(Math.ceil(box.getX()), spacing, originX,
+        maxX + 1), minX);
+    int toX = firstNode(Math.ceil(box.getX() + box.getWidth()), spacing,
+        originX, maxX + 1) - 1;
+    int fromY = Math.max(firstNode(Math.ceil(box.getY()), spacing, originY,
+        maxY + 1), minY);
+    int toY = firstNode(Math.ceil(box.getY() + box.getHeight()), spacing,
+        originY, maxY + 1) - 1;
+
+    if (fromX > toX)
+      return;
+
+    for (int y = fromY; y <= toY; y++) {
+      sink.span(y, fromX, toX);
+    }
+  }
+
+  /* Ellipse2D.contains(): the normalized distance from the center of the
+   * frame is below one half */
+  private static void scanEllipse(Grid grid, Rectangle2D frame, int minX,
+      int minY, int maxX, int maxY, SpanSink sink) {
+    int spacing = grid.getSpacing();
+    double originX = grid.getOriginX();
+    double originY = grid.getOriginY();
+
+    double ex = frame.getX();
+    double ey = frame.getY();
+    double ew = frame.getWidth();
+    double eh = frame.getHeight();
+    if (ew <= 0.0 || eh <= 0.0)
+      return;
+
+    int fromY = Math.max(firstNode(Math.floor(ey), spacing, originY,
+        maxY + 1), minY);
+    int toY = firstNode(Math.ceil(ey + eh) + 1, spacing, originY, maxY + 1)
+        - 1;
+
+    for (int y = fromY; y <= toY; y++) {
+      double normy = (nodePixel(y, spacing, originY) - ey) / eh - 0.5;
+      double rest = 0.25 - normy * normy;
+      if (rest <= 0.0)
+        continue;
+
+      // candidate run, one pixel wider than the ellipse on either side
+      double half = Math.sqrt(rest) * ew;
+      double center = ex + ew / 2.0;
+      int fromX = Math.max(firstNode(Math.floor(center - half), spacing,
+          originX, maxX + 1), minX);
+      int toX = firstNode(Math.ceil(center + half) + 1, spacing, originX,
+          maxX + 1) - 1;
+
+      // trim the ends with the exact test
+      while (fromX <= toX && !insideEllipse(nodePixel(fromX, spacing,
+          originX), ex, ew, normy)) {
+        fromX++;
+      }
+      while (toX >= fromX && !insideEllipse(nodePixel(toX, spacing, originX),
+          ex, ew, normy)) {
+        toX--;
+      }
+
+      if (fromX <= toX)
+        sink.span(y, fromX, toX);
+    }
+  }
+
+  private static boolean insideEllipse(int x, double ex, double ew,
+      double normy) {
+    double normx = (x - ex) / ew - 0.5;
+    return normx * normx + normy * normy < 0.25;
+  }
+
+  /* Polygon.contains(): even-odd crossings of a ray cast towards +x, within
+   * the integer bounding box */
+  private static void scanPolygon(Grid grid, int[] xpoints, int[] ypoints,
+      int npoints, int minX, int minY, int maxX, int maxY, SpanSink sink) {
+    if (npoints <= 2)
+      return;
+
+    int spacing = grid.getSpacing();
+    double originX = grid.getOriginX();
+    double originY = grid.getOriginY();
+
+    int boundsMinX = Integer.MAX_VALUE;
+    int boundsMinY = Integer.MAX_VALUE;
+    int boundsMaxX = Integer.MIN_VALUE;
+    int boundsMaxY = Integer.MIN_VALUE;
+    for (int i = 0; i < npoints; i++) {
+      boundsMinX = Math.min(boundsMinX, xpoints[i]);
+      boundsMaxX = Math.max(boundsMaxX, xpoints[i]);
+      boundsMinY = Math.min(boundsMinY, ypoints[i]);
+      boundsMaxY = Math.max(boundsMaxY, ypoints[i]);
+    }
+
+    int fromY = Math.max(firstNode(boundsMinY, spacing, originY, maxY + 1),
+        minY);
+    int toY = firstNode(boundsMaxY, spacing, originY, maxY + 1) - 1;
+
+    // pixels x < cutoffs[i] are counted as crossing edge i
+    int[] cutoffs = new int[npoints];
+
+    for (int y = fromY; y <= toY; y++) {
+      int py = nodePixel(y, spacing, originY);
+      int edges = 0;
+
+      int lastx = xpoints[npoints - 1];
+      int lasty = ypoints[npoints - 1];
+      for (int i = 0; i < npoints; i++) {
+        int curx = xpoints[i];
+        int cury = ypoints[i];
+
+        if (cury != lasty) {
+          int leftx = Math.min(curx, lastx);
+          int rightx = Math.max(curx, lastx);
+
+          int basex;
+          int basey;
+          boolean active;
+          if (cury < lasty) {
+            basex = curx;
+            basey = cury;
+            active = py >= cury && py < lasty;
+          } else {
+            basex = lastx;
+            basey = lasty;
+            active = py >= lasty && py < cury;
+          }
+
+          if (active) {
+            // same expression as Polygon, so the rounding agrees
+            double q = (double) (py - basey) / (lasty - cury)
+                * (lastx - curx);
+            int edgeX = basex + (int) Math.ceil(q);
+            cutoffs[edges++] = Math.min(rightx, Math.max(leftx, edgeX));
+          }
+        }
+
+        lastx = curx;
+        lasty = cury;
+      }
+
+      // a pixel is inside where an odd number of cutoffs lie to its right
+      Arrays.sort(cutoffs, 0, edges);
+      for (int i = (edges & 1) != 0 ? 0 : 1; i < edges; i += 2) {
+        int from = i == 0 ? Integer.MIN_VALUE : cutoffs[i - 1];
+        emitRun(y, Math.max(from, boundsMinX), Math.min(cutoffs[i],
+            boundsMaxX), spacing, originX, minX, maxX, sink);
+      }
+    }
+  }
+
+  /* emits the nodes of row y whose pixels lie in [from, to) */
+  private static void emitRun(int y, int from, int to, int spacing,
+      double originX, int minX, int maxX, SpanSink sink) {
+    if (from >= to)
+      return;
+
+    int fromX = Math.max(firstNode(from, spacing, originX, maxX + 1), minX);
+    int toX = firstNode(to, spacing, originX, maxX + 1) - 1;
+    if (fromX <= toX)
+      sink.span(y, fromX, toX);
+  }
+
+  /* the pixel coordinate DShape.contains() is called with for a node */
+  private static int nodePixel(int node, int spacing, double origin) {
+    return (int) (node * spacing + origin);
+  }
+
+  /* smallest node in 0..limit whose pixel is at least a, or limit if
+   * there is none */
+  private static int firstNode(double a, int spacing, double origin,
+      int limit) {
+    double guess = Math.ceil((a - origin) / spacing);
+    int node = (int) Math.max(0, Math.min(guess, limit));
+
+    while (node > 0 && nodePixel(node - 1, spacing, origin) >= a) {
+      node--;
+    }
+    while (node < limit && nodePixel(node, spacing, origin) < a) {
+      node++;
+    }
+    return node;
+  }
+}
@@ -0,0 +1,221 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/* A Grid that keeps its cells outside the Java heap, in direct buffers:
+ * travel times, states, the feasibility bitset and the cost map. A field
+ * of several gigabytes then adds nothing to the heap or to the work of the
+ * garbage collector, and solvers and tracers read it through the same
+ * accessors as a dense grid.
+ *
+ * A buffer holds at most 2 GB, so times and costs are split into chunks
+ * of 2^27 cells. The buffers are freed when the grid is garbage collected.
+ * Direct memory is capped by -XX:MaxDirectMemorySize, which defaults to
+ * the heap size, so raise it for a grid bigger than the heap. FmmSolver
+ * still keeps a band slot on the heap for every cell it reaches, 4 bytes
+ * against the 9 kept here.
+ */
+class OffHeapGrid extends Grid {
+  private static final int CHUNK_SHIFT = 27;
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+  // copied in to clear the buffers in bulk
+  private static final int FILL = 4096;
+  private static final double[] FAR_TIMES = new double[FILL];
+  private static final byte[] FAR_STATES = new byte[FILL];
+  private static final long[] NONE_BLOCKED = new long[FILL];
+
+  static {
+    Arrays.fill(FAR_TIMES, INF);
+  }
+
+  // cells are read and written at absolute indices, so the position of
+  // each buffer is free for the bulk copies that clear it
+  private final DoubleBuffer[] time; // travel time of each cell, by chunk
+  private final ByteBuffer state; // fast marching state of each cell
+  private final LongBuffer blocked; // one bit per cell, set if infeasible
+  private FloatBuffer[] cost; // by chunk like time, null if 1 everywhere
+
+  OffHeapGrid(int dimX, int dimY, int spacing, double originX,
+      double originY) {
+    super(dimX, dimY, spacing, originX, originY, false);
+    if ((long) dimX * dimY > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Grid of " + dimX + " x " + dimY
+          + " has too many cells to index");
+
+    int cells = dimX * dimY;
+    time = new DoubleBuffer[chunks(cells)];
+    for (int i = 0; i < time.length; i++) {
+      time[i] = ByteBuffer.allocateDirect(8 * chunkSize(cells, i))
+          .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+    state = ByteBuffer.allocateDirect(cells);
+    blocked = ByteBuffer.allocateDirect(8 * ((cells + 63) >>> 6))
+        .order(ByteOrder.nativeOrder()).asLongBuffer();
+
+    // direct buffers start zeroed, which is far and feasible already
+    for (DoubleBuffer chunk : time) {
+      fill(chunk);
+    }
+  }
+
+  // grid laid out by a resolution
+  OffHeapGrid(Resolution resolution, double originX, double originY) {
+    this(resolution.getDimX(), resolution.getDimY(), resolution.getSpacing(),
+        originX, originY);
+  }
+
+  public double getTime(int id) {
+    return time[id >>> CHUNK_SHIFT].get(id & CHUNK_MASK);
+  }
+
+  public double getTime(int x, int y) {
+    return getTime(index(x, y));
+  }
+
+  public void setTime(int id, double t) {
+    time[id >>> CHUNK_SHIFT].put(id & CHUNK_MASK, t);
+  }
+
+  public byte getState(int id) {
+    return state.get(id);
+  }
+
+  public void setState(int id, byte s) {
+    state.put(id, s);
+  }
+
+  public boolean isFeasible(int id) {
+    return (blocked.get(id >>> 6) & (1L << id)) == 0;
+  }
+
+  public void setFeasible(int id, boolean feasible) {
+    long word = blocked.get(id >>> 6);
+    blocked.put(id >>> 6, feasible ? word & ~(1L << id) : word | 1L << id);
+  }
+
+  // blocks the run of cells fromX..toX (inclusive) of row y, a word at a time
+  public void blockSpan(int y, int fromX, int toX) {
+    int from = index(fromX, y);
+    int to = index(toX, y);
+
+    int fromWord = from >>> 6;
+    int toWord = to >>> 6;
+    long fromMask = -1L << from; // bits at or above from
+    long toMask = -1L >>> (63 - (to & 63)); // bits at or below to
+
+    if (fromWord == toWord) {
+      blocked.put(fromWord, blocked.get(fromWord) | fromMask & toMask);
+      return;
+    }
+
+    blocked.put(fromWord, blocked.get(fromWord) | fromMask);
+    for (int word = fromWord + 1; word < toWord; word++) {
+      blocked.put(word, -1L);
+    }
+    blocked.put(toWord, blocked.get(toWord) | toMask);
+  }
+
+  public float getCost(int id) {
+    return cost == null ? 1 : cost[id >>> CHUNK_SHIFT].get(id & CHUNK_MASK);
+  }
+
+  /* Copies a cost map into direct memory, or goes back to unit cost with
+   * null. The array is not kept. Cells with an infinite cost are blocked;
+   * as with Grid.setCosts(), cells the old map blocked stay blocked until
+   * resetFeasible() and the obstacles are rasterized again.
+   */
+  public void setCosts(float[] newCost) {
+    if (newCost != null && newCost.length != size())
+      throw new IllegalArgumentException("Cost map has " + newCost.length
+          + " cells, the grid has " + size());
+
+    if (newCost == null) {
+      cost = null;
+      return;
+    }
+
+    if (cost == null) {
+      cost = new FloatBuffer[time.length];
+      for (int i = 0; i < cost.length; i++) {
+        cost[i] = ByteBuffer.allocateDirect(4 * chunkSize(size(), i))
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+      }
+    }
+    for (int i = 0; i < cost.length; i++) {
+      cost[i].clear();
+      cost[i].put(newCost, i << CHUNK_SHIFT, cost[i].capacity());
+    }
+    blockImpassable();
+  }
+
+  public float getMinCost() {
+    if (cost == null)
+      return 1;
+
+    float min = Float.MAX_VALUE;
+    for (FloatBuffer chunk : cost) {
+      for (int i = 0; i < chunk.capacity(); i++) {
+        min = Math.min(min, chunk.get(i));
+      }
+    }
+    return min;
+  }
+
+  public boolean isPassable(int id) {
+    return getCost(id) != Float.POSITIVE_INFINITY;
+  }
+
+  void blockImpassable() {
+    if (cost == null)
+      return;
+
+    for (int id = 0; id < size(); id++) {
+      if (!isPassable(id))
+        setFeasible(id, false);
+    }
+  }
+
+  /* Puts every cell back in the far set with an infinite travel time, in
+   * bulk copies. Feasibility is left alone.
+   */
+  public void reset() {
+    for (DoubleBuffer chunk : time) {
+      fill(chunk);
+    }
+
+    state.clear();
+    while (state.hasRemaining()) {
+      state.put(FAR_STATES, 0, Math.min(FILL, state.remaining()));
+    }
+  }
+
+  // marks every cell as feasible, except where the cost map forbids it
+  public void resetFeasible() {
+    blocked.clear();
+    while (blocked.hasRemaining()) {
+      blocked.put(NONE_BLOCKED, 0, Math.min(FILL, blocked.remaining()));
+    }
+    blockImpassable();
+  }
+
+  // sets every time of a chunk to INF
+  private static void fill(DoubleBuffer chunk) {
+    chunk.clear();
+    while (chunk.hasRemaining()) {
+      chunk.put(FAR_TIMES, 0, Math.min(FILL, chunk.remaining()));
+    }
+  }
+
+  private static int chunks(int cells) {
+    return (int) (((long) cells + CHUNK_MASK) >>> CHUNK_SHIFT);
+  }
+
+  // cells in chunk i
+  private static int chunkSize(int cells, int i) {
+    return Math.min(CHUNK_MASK + 1, cells - (i << CHUNK_SHIFT));
+  }
+}
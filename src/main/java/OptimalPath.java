@@ -13,15 +13,19 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
 
 public class OptimalPath implements ActionListener {
   DomainPanel domainSpacePanel; // contains the domain space
@@ -39,7 +43,11 @@ public class OptimalPath implements ActionListener {
                                 // added !!!!Maybe do ovals with major and minor
                                 // axes?
   JComboBox resolutionChoices = null; // combo box to select resolution
+  JComboBox<String> engineChoices = null; // combo box to select the engine
   JButton fmmButton = null; // button to find optimal path using FMM
+  JCheckBox dynamicBox = null; // re-solve locally as obstacles are moved
+  JCheckBox pointToPointBox = null; // solve only as far as the end
+  JCheckBox corridorBox = null; // and coarse to fine
   JTextArea log = null; // text field where a log is made of application status
   JScrollPane logScrollPane = null;
 
@@ -137,6 +145,28 @@ public class OptimalPath implements ActionListener {
     resolutionChoices.addActionListener(this);
 
     buttonComboPanel.add(resolutionChoices);
+
+    engineChoices = new JComboBox<String>(new String[] { "Fast Marching",
+        "Parallel Fast Sweeping" });
+    engineChoices.setActionCommand("engineChanged");
+    engineChoices.addActionListener(this);
+    buttonComboPanel.add(engineChoices);
+
+    dynamicBox = new JCheckBox("Dynamic");
+    dynamicBox.setActionCommand("dynamicChanged");
+    dynamicBox.addActionListener(this);
+    buttonComboPanel.add(dynamicBox);
+
+    pointToPointBox = new JCheckBox("Point to point");
+    pointToPointBox.setActionCommand("pointToPointChanged");
+    pointToPointBox.addActionListener(this);
+    buttonComboPanel.add(pointToPointBox);
+
+    corridorBox = new JCheckBox("Coarse to fine");
+    corridorBox.setActionCommand("corridorChanged");
+    corridorBox.addActionListener(this);
+    corridorBox.setEnabled(false);
+    buttonComboPanel.add(corridorBox);
     // shapePalettePanel.add(resolutionChoices);
 
     // log panel
@@ -181,10 +211,51 @@ public class OptimalPath implements ActionListener {
 
     else if ("Fast Marching Method".equals(e.getActionCommand())) {
       log.append("\nStarting Fast Marching Method. Please wait...");
-      log.repaint();
-      domainSpacePanel.resetNodes();
-      domainSpacePanel.performFMM();
-      log.append("\nFinished Fast Marching Method.");
+      PropertyChangeListener progress = new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent evt) {
+          FmmWorker worker = (FmmWorker) evt.getSource();
+
+          if ("accepted".equals(evt.getPropertyName())) {
+            log.append("\nSolved " + evt.getNewValue() + " of "
+                + worker.getTotal() + " nodes...");
+          } else if (evt.getNewValue() == SwingWorker.StateValue.DONE) {
+            log.append(worker.isCancelled()
+                ? "\nFast Marching Method cancelled."
+                : "\nFinished Fast Marching Method.");
+          }
+        }
+      };
+
+      // nothing to run if the field was solved before
+      if (domainSpacePanel.performFMM(progress) == null) {
+        log.append("\nFinished Fast Marching Method (cached field).");
+        log.append("\n" + domainSpacePanel.getFieldCache());
+      }
+    }
+
+    else if ("engineChanged".equals(e.getActionCommand())) {
+      log.append("\nNew Engine: " + engineChoices.getSelectedItem());
+      domainSpacePanel.setEngine(engineChoices.getSelectedIndex() == 0
+          ? FmmWorker.FAST_MARCHING : FmmWorker.FAST_SWEEPING);
+    }
+
+    else if ("dynamicChanged".equals(e.getActionCommand())) {
+      log.append(dynamicBox.isSelected() ? "\nDynamic re-solve on."
+          : "\nDynamic re-solve off.");
+      domainSpacePanel.setDynamic(dynamicBox.isSelected());
+    }
+
+    else if ("pointToPointChanged".equals(e.getActionCommand())) {
+      log.append(pointToPointBox.isSelected() ? "\nPoint to point solve on."
+          : "\nPoint to point solve off.");
+      domainSpacePanel.setPointToPoint(pointToPointBox.isSelected());
+      corridorBox.setEnabled(pointToPointBox.isSelected());
+    }
+
+    else if ("corridorChanged".equals(e.getActionCommand())) {
+      log.append(corridorBox.isSelected() ? "\nCoarse to fine solve on."
+          : "\nCoarse to fine solve off.");
+      domainSpacePanel.setCorridor(corridorBox.isSelected());
     }
 
     else if ("rectangleSizeChanged".equals(e.getActionCommand())) {
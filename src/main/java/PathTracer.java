@@ -0,0 +1,251 @@
+/* Samples a solved travel-time field in world coordinates and traces the
+ * optimal path back from a target by descending its gradient. Everything
+ * here is headless; drawing the path is up to the caller. The field can be
+ * a Grid or a FieldFile mapped from disk; it is only ever read, so one
+ * tracer can be shared between threads.
+ *
+ * tracePath() integrates the descent in doubles with an adaptive third
+ * order Runge-Kutta method (Bogacki-Shampine), taking long steps where the
+ * path is straight and short ones where it bends. Given a GradientField,
+ * the descent direction at each stage is read from it rather than from
+ * the times, which is cheaper when many paths share one field.
+ */
+class PathTracer {
+  private static final double INF = Grid.INF;
+
+  // step length bounds of tracePath(), in spacings
+  private static final double MIN_STEP = 1.0 / 64;
+  private static final double MAX_STEP = 4;
+
+  // position error allowed per step of tracePath(), in spacings
+  private static final double STEP_TOLERANCE = 1e-2;
+
+  private static final int MAX_STEPS = 100000;
+
+  private final Field grid;
+  private final GradientField gradient; // precomputed descent, or null
+
+  PathTracer(Field grid) {
+    this.grid = grid;
+    this.gradient = null;
+  }
+
+  // traces against the field the gradient was computed from
+  PathTracer(GradientField gradient) {
+    this.grid = gradient.getField();
+    this.gradient = gradient;
+  }
+
+  /* bilinear interpolation of the travel time at a world position; a cell
+   * with an unreached corner is read as tracePath() reads it */
+  public double interpoTime(double x, double y) {
+    int dimX = grid.getDimX();
+    int dimY = grid.getDimY();
+    int spacing = grid.getSpacing();
+    double originX = grid.getOriginX();
+    double originY = grid.getOriginY();
+
+    // find the node position
+    int nodeX = (int) (x - originX) / spacing;
+    int nodeY = (int) (y - originY) / spacing;
+
+    // find ratio from starting node position
+    double tempX = (x - (nodeX * spacing) - originX) / spacing;
+    double tempY = (y - nodeY * spacing - originY) / spacing;
+
+    double a;
+    double b;
+    double c;
+    double d;
+
+    if (nodeX > 0 && nodeY > 0)
+      d = grid.getTime(nodeX, nodeY);
+    else
+      return INF;
+
+    if (nodeX + 1 < dimX)
+      b = grid.getTime(nodeX + 1, nodeY) - d;
+    else
+      return INF;
+
+    if (nodeY + 1 < dimY)
+      c = grid.getTime(nodeX, nodeY + 1) - d;
+    else
+      return INF;
+    if (nodeX + 1 < dimX && nodeY + 1 < dimY)
+      a = grid.getTime(nodeX + 1, nodeY + 1) - b - c - d;
+    else
+      return INF;
+
+    // an unreached corner is infinite, so the terms above are not numbers
+    if (Double.isNaN(a) || Double.isInfinite(a))
+      return fieldTime(x, y, new double[6]);
+
+    // return interpolated time
+    return a * tempX * tempY + b * tempX + c * tempY + d;
+  }
+
+  /* Traces the path from a world position back towards the source, in
+   * doubles. The returned polyline starts at the given position and ends
+   * within a spacing (in travel time) of the source, or where the descent
+   * stalls. Its points are the integrator's steps; simplify() it to drop
+   * the ones a straight line would do for.
+   */
+  public Polyline tracePath(double startX, double startY) {
+    int spacing = grid.getSpacing();
+    double minStep = MIN_STEP * spacing;
+    double maxStep = MAX_STEP * spacing;
+    double tolerance = STEP_TOLERANCE * spacing;
+
+    Polyline path = new Polyline();
+    double[] k1 = new double[2];
+    double[] k2 = new double[2];
+    double[] k3 = new double[2];
+    double[] k4 = new double[2];
+    double[] cell = new double[6];
+
+    double x = startX;
+    double y = startY;
+    double t = fieldTime(x, y, cell);
+    double h = spacing;
+    path.add(x, y);
+
+    if (!descent(x, y, k1, cell))
+      return path;
+
+    for (int steps = 0; t > spacing && steps < MAX_STEPS; steps++) {
+      // do not step past the source
+      h = Math.max(Math.min(h, t), minStep);
+
+      // third order step, with the second order estimate for its error
+      descent(x + h / 2 * k1[0], y + h / 2 * k1[1], k2, cell);
+      descent(x + 3 * h / 4 * k2[0], y + 3 * h / 4 * k2[1], k3, cell);
+      double nextX = x + h * (2 * k1[0] + 3 * k2[0] + 4 * k3[0]) / 9;
+      double nextY = y + h * (2 * k1[1] + 3 * k2[1] + 4 * k3[1]) / 9;
+      boolean ahead = descent(nextX, nextY, k4, cell);
+
+      double errorX = h * (-5 * k1[0] + 6 * k2[0] + 8 * k3[0] - 9 * k4[0])
+          / 72;
+      double errorY = h * (-5 * k1[1] + 6 * k2[1] + 8 * k3[1] - 9 * k4[1])
+          / 72;
+      double error = Math.hypot(errorX, errorY);
+
+      double scale = error == 0 ? 2
+          : Math.max(0.2, Math.min(2, 0.9 * Math.cbrt(tolerance / error)));
+
+      if (error > tolerance && h > minStep) {
+        h = h * scale; // try again, shorter
+        continue;
+      }
+
+      double nextT = fieldTime(nextX, nextY, cell);
+      if (nextT >= INF && h > minStep) {
+        h = h / 2; // stepped into an obstacle; try again, shorter
+        continue;
+      }
+      if (nextT >= t && h <= minStep)
+        break; // no longer going downhill
+
+      x = nextX;
+      y = nextY;
+      t = nextT;
+      path.add(x, y);
+      if (!ahead)
+        break;
+
+      // the last slope is the first of the next step
+      double[] swap = k1;
+      k1 = k4;
+      k4 = swap;
+      h = Math.min(h * scale, maxStep);
+    }
+
+    return path;
+  }
+
+  /* Bilinear travel time at a world position, extrapolated from the
+   * nearest cell outside the grid. */
+  private double fieldTime(double x, double y, double[] cell) {
+    if (!bilinear(x, y, cell))
+      return INF;
+    return cell[0] * cell[4] * cell[5] + cell[1] * cell[4]
+        + cell[2] * cell[5] + cell[3];
+  }
+
+  /* Unit direction of steepest descent of the bilinear travel time at a
+   * world position, into dir, read from the gradient field where it has
+   * one. Returns false if the field is flat there. */
+  private boolean descent(double x, double y, double[] dir, double[] cell) {
+    if (gradient != null && gradient.descent(x, y, dir))
+      return true;
+
+    dir[0] = 0;
+    dir[1] = 0;
+    if (!bilinear(x, y, cell))
+      return false;
+
+    double gradX = cell[0] * cell[5] + cell[1];
+    double gradY = cell[0] * cell[4] + cell[2];
+    double norm = Math.hypot(gradX, gradY);
+    if (norm == 0)
+      return false;
+
+    dir[0] = -gradX / norm;
+    dir[1] = -gradY / norm;
+    return true;
+  }
+
+  /* Coefficients { a, b, c, d } of the bilinear travel time a fx fy + b fx
+   * + c fy + d over the cell a world position falls in, followed by the
+   * position { fx, fy } within the cell. Blocked corners count as one
+   * spacing later than the latest open corner, so the path is pushed off
+   * obstacles without the jump to INF. Returns false if every corner is
+   * blocked. */
+  private boolean bilinear(double x, double y, double[] cell) {
+    int spacing = grid.getSpacing();
+    double fx = (x - grid.getOriginX()) / spacing;
+    double fy = (y - grid.getOriginY()) / spacing;
+    int nodeX = cellOf(fx, grid.getDimX());
+    int nodeY = cellOf(fy, grid.getDimY());
+
+    double t00 = grid.getTime(nodeX, nodeY);
+    double t10 = grid.getTime(nodeX + 1, nodeY);
+    double t01 = grid.getTime(nodeX, nodeY + 1);
+    double t11 = grid.getTime(nodeX + 1, nodeY + 1);
+
+    double latest = -1;
+    if (t00 < INF)
+      latest = t00;
+    if (t10 < INF)
+      latest = Math.max(latest, t10);
+    if (t01 < INF)
+      latest = Math.max(latest, t01);
+    if (t11 < INF)
+      latest = Math.max(latest, t11);
+    if (latest < 0)
+      return false;
+
+    double blocked = latest + spacing;
+    if (t00 >= INF)
+      t00 = blocked;
+    if (t10 >= INF)
+      t10 = blocked;
+    if (t01 >= INF)
+      t01 = blocked;
+    if (t11 >= INF)
+      t11 = blocked;
+
+    cell[0] = t11 - t10 - t01 + t00;
+    cell[1] = t10 - t00;
+    cell[2] = t01 - t00;
+    cell[3] = t00;
+    cell[4] = fx - nodeX;
+    cell[5] = fy - nodeY;
+    return true;
+  }
+
+  // the cell (lower left node) a position in nodes falls in, kept inside
+  private static int cellOf(double f, int dim) {
+    return Math.max(0, Math.min((int) Math.floor(f), dim - 2));
+  }
+}
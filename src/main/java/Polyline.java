@@ -0,0 +1,129 @@
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/* A path as a growable list of points in world coordinates, stored as
+ * interleaved x, y doubles. */
+class Polyline {
+  private double[] coords; // x0, y0, x1, y1, ...
+  private int size; // number of points
+
+  Polyline() {
+    this(16);
+  }
+
+  Polyline(int capacity) {
+    coords = new double[2 * Math.max(capacity, 1)];
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double getX(int i) {
+    return coords[2 * i];
+  }
+
+  public double getY(int i) {
+    return coords[2 * i + 1];
+  }
+
+  public void add(double x, double y) {
+    if (2 * size == coords.length)
+      coords = Arrays.copyOf(coords, 2 * coords.length);
+
+    coords[2 * size] = x;
+    coords[2 * size + 1] = y;
+    size++;
+  }
+
+  // total length of the segments
+  public double length() {
+    double length = 0;
+    for (int i = 1; i < size; i++) {
+      length += Math.hypot(getX(i) - getX(i - 1), getY(i) - getY(i - 1));
+    }
+    return length;
+  }
+
+  /* Douglas-Peucker simplification: the fewest of these points, keeping
+   * both ends, such that no dropped point is further than the tolerance
+   * from the simplified line. */
+  public Polyline simplify(double tolerance) {
+    if (size < 3)
+      return copy();
+
+    boolean[] keep = new boolean[size];
+    keep[0] = true;
+    keep[size - 1] = true;
+
+    // spans still to check, as pairs of kept end points
+    int[] spans = new int[2 * size];
+    int top = 0;
+    spans[top++] = 0;
+    spans[top++] = size - 1;
+
+    while (top > 0) {
+      int last = spans[--top];
+      int first = spans[--top];
+
+      int farthest = -1;
+      double worst = tolerance;
+      for (int i = first + 1; i < last; i++) {
+        double distance = distanceToSegment(i, first, last);
+        if (distance > worst) {
+          worst = distance;
+          farthest = i;
+        }
+      }
+
+      if (farthest != -1) {
+        keep[farthest] = true;
+        spans[top++] = first;
+        spans[top++] = farthest;
+        spans[top++] = farthest;
+        spans[top++] = last;
+      }
+    }
+
+    Polyline simple = new Polyline();
+    for (int i = 0; i < size; i++) {
+      if (keep[i])
+        simple.add(getX(i), getY(i));
+    }
+    return simple;
+  }
+
+  public Polyline copy() {
+    Polyline copy = new Polyline(size);
+    System.arraycopy(coords, 0, copy.coords, 0, 2 * size);
+    copy.size = size;
+    return copy;
+  }
+
+  // the points as a shape, for drawing
+  public Path2D.Double toPath() {
+    Path2D.Double path = new Path2D.Double();
+    for (int i = 0; i < size; i++) {
+      if (i == 0) {
+        path.moveTo(getX(i), getY(i));
+      } else {
+        path.lineTo(getX(i), getY(i));
+      }
+    }
+    return path;
+  }
+
+  // distance from point i to the segment between points a and b
+  private double distanceToSegment(int i, int a, int b) {
+    double px = getX(i) - getX(a);
+    double py = getY(i) - getY(a);
+    double dx = getX(b) - getX(a);
+    double dy = getY(b) - getY(a);
+
+    double lengthSq = dx * dx + dy * dy;
+    double t = lengthSq == 0 ? 0 : (px * dx + py * dy) / lengthSq;
+    t = Math.max(0, Math.min(1, t));
+    return Math.hypot(px - t * dx, py - t * dy);
+  }
+}
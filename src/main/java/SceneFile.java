@@ -0,0 +1,153 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/* A planning scenario read from a text file: the grid to solve on, the
+ * obstacles, the start point and the targets to find paths to. One
+ * statement per line, blank lines and # comments ignored:
+ *
+ *   resolution dimX dimY spacing padding
+ *   start x y
+ *   end x y                        (one line per target)
+ *   rectangle x y width height     (x, y is the top left corner)
+ *   ellipse x y width height       (x, y is the top left of its box)
+ *   triangle x y width height      (x, y is the center)
+ *
+ * Points are world coordinates, with node (0, 0) at (padding, padding) as
+ * in FmmSolver.solve(). The resolution and start are required, and at
+ * least one end.
+ */
+final class SceneFile {
+  private final String name;
+  private final Resolution resolution;
+  private final List<DShape> obstacles;
+  private final double startX;
+  private final double startY;
+  private final List<double[]> targets; // { x, y } of each end
+
+  private SceneFile(String name, Resolution resolution,
+      List<DShape> obstacles, double startX, double startY,
+      List<double[]> targets) {
+    this.name = name;
+    this.resolution = resolution;
+    this.obstacles = obstacles;
+    this.startX = startX;
+    this.startY = startY;
+    this.targets = targets;
+  }
+
+  /* Reads a scene. Throws an IOException naming the line of the first
+   * statement it cannot read. */
+  public static SceneFile read(Path path) throws IOException {
+    String name = path.getFileName().toString();
+    Resolution resolution = null;
+    List<DShape> obstacles = new ArrayList<DShape>();
+    double[] start = null;
+    List<double[]> targets = new ArrayList<double[]>();
+
+    BufferedReader in = Files.newBufferedReader(path,
+        StandardCharsets.UTF_8);
+    try {
+      String line;
+      int number = 0;
+      while ((line = in.readLine()) != null) {
+        number++;
+        int comment = line.indexOf('#');
+        if (comment >= 0)
+          line = line.substring(0, comment);
+        line = line.trim();
+        if (line.isEmpty())
+          continue;
+
+        String[] words = line.split("\\s+");
+        try {
+          String keyword = words[0];
+          if ("resolution".equals(keyword)) {
+            double[] values = numbers(words, 4);
+            resolution = new Resolution((int) values[0], (int) values[1],
+                (int) values[2], (int) values[3]);
+            if (resolution.getDimX() < 2 || resolution.getDimY() < 2
+                || resolution.getSpacing() < 1)
+              throw new IllegalArgumentException("bad resolution");
+          } else if ("start".equals(keyword)) {
+            start = numbers(words, 2);
+          } else if ("end".equals(keyword)) {
+            targets.add(numbers(words, 2));
+          } else if ("rectangle".equals(keyword)) {
+            obstacles.add(shape(DShape.RECTANGLE, numbers(words, 4)));
+          } else if ("ellipse".equals(keyword)) {
+            obstacles.add(shape(DShape.ELLIPSE, numbers(words, 4)));
+          } else if ("triangle".equals(keyword)) {
+            obstacles.add(shape(DShape.TRIANGLE, numbers(words, 4)));
+          } else {
+            throw new IllegalArgumentException("unknown statement "
+                + keyword);
+          }
+        } catch (IllegalArgumentException e) {
+          throw new IOException(name + ":" + number + ": " + e.getMessage());
+        }
+      }
+    } finally {
+      in.close();
+    }
+
+    if (resolution == null)
+      throw new IOException(name + ": no resolution");
+    if (start == null)
+      throw new IOException(name + ": no start");
+    if (targets.isEmpty())
+      throw new IOException(name + ": no end");
+
+    return new SceneFile(name, resolution, obstacles, start[0], start[1],
+        targets);
+  }
+
+  // the numbers following the keyword, which must be exactly count of them
+  private static double[] numbers(String[] words, int count) {
+    if (words.length != count + 1)
+      throw new IllegalArgumentException(words[0] + " takes " + count
+          + " numbers");
+
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = Double.parseDouble(words[i + 1]);
+    }
+    return values;
+  }
+
+  private static DShape shape(int type, double[] values) {
+    DShape temp = new DShape(type);
+    temp.setSize(values[2], values[3]);
+    temp.setLocation(values[0], values[1]);
+    return temp;
+  }
+
+  // the file name the scene was read from
+  public String getName() {
+    return name;
+  }
+
+  public Resolution getResolution() {
+    return resolution;
+  }
+
+  public List<DShape> getObstacles() {
+    return obstacles;
+  }
+
+  public double getStartX() {
+    return startX;
+  }
+
+  public double getStartY() {
+    return startY;
+  }
+
+  public List<double[]> getTargets() {
+    return targets;
+  }
+}
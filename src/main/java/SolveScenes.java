@@ -0,0 +1,278 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/* Headless batch solver: solves every *.scene file (see SceneFile) in a
+ * directory and writes one JSON object per scene to standard output, one
+ * per line, in the order the scenes finish. The scenes are solved on a
+ * fixed pool of worker threads. Only a few scenes per worker are read
+ * ahead, so memory stays flat however many files there are.
+ *
+ * Each line gives the scene name, the grid size, the time taken to read,
+ * rasterize, march and trace (in milliseconds), and for every end point
+ * its travel time (null if unreached) and its path back to the start as
+ * [x, y] pairs:
+ *
+ *   {"scene":"a.scene","dimX":128,"dimY":128,"readMs":0.4,...,
+ *    "targets":[{"x":480,"y":470,"time":512.3,"path":[[480,470],...]}]}
+ *
+ * A scene that cannot be read or solved gives {"scene":..,"error":..}
+ * instead, and the others carry on.
+ *
+ * With -tiled, scenes are solved on TiledGrids sharing one TilePool, and
+ * a scene with a single end point is only marched towards it, so a huge
+ * map only allocates the tiles on the way. The line then also gives the
+ * number of tiles the solve used. With -offheap, scenes are solved on
+ * OffHeapGrids, whose cells take no room on the heap.
+ *
+ * Usage: java SolveScenes [-threads n] [-simplify tolerance]
+ *   [-tiled | -offheap] directory
+ */
+public class SolveScenes {
+  // scenes queued or running per worker thread
+  private static final int READ_AHEAD = 2;
+
+  public static void main(String[] args) throws IOException,
+      InterruptedException {
+    System.setProperty("java.awt.headless", "true");
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    double tolerance = 0;
+    TilePool tiles = null;
+    boolean offHeap = false;
+    Path directory = null;
+
+    for (int i = 0; i < args.length; i++) {
+      if ("-threads".equals(args[i]) && i + 1 < args.length) {
+        threads = Math.max(1, Integer.parseInt(args[++i]));
+      } else if ("-simplify".equals(args[i]) && i + 1 < args.length) {
+        tolerance = Double.parseDouble(args[++i]);
+      } else if ("-tiled".equals(args[i])) {
+        tiles = new TilePool(Integer.MAX_VALUE);
+      } else if ("-offheap".equals(args[i])) {
+        offHeap = true;
+      } else if (directory == null && !args[i].startsWith("-")) {
+        directory = Paths.get(args[i]);
+      } else {
+        directory = null;
+        break;
+      }
+    }
+
+    // a grid is either tiled or off the heap
+    if (tiles != null && offHeap)
+      directory = null;
+
+    if (directory == null) {
+      System.err.println("Usage: java SolveScenes [-threads n] "
+          + "[-simplify tolerance] [-tiled | -offheap] directory");
+      System.exit(2);
+    }
+
+    long start = System.nanoTime();
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+        StandardCharsets.UTF_8));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    CompletionService<String> results = new ExecutorCompletionService<String>(
+        pool);
+
+    int pending = 0;
+    int solved = 0;
+    try {
+      DirectoryStream<Path> scenes = Files.newDirectoryStream(directory,
+          "*.scene");
+      try {
+        for (Path path : scenes) {
+          if (pending == READ_AHEAD * threads) {
+            write(out, results);
+            pending--;
+          }
+          results.submit(new Solve(path, tolerance, tiles, offHeap));
+          pending++;
+          solved++;
+        }
+      } finally {
+        scenes.close();
+      }
+
+      for (; pending > 0; pending--) {
+        write(out, results);
+      }
+      out.flush();
+    } finally {
+      pool.shutdownNow();
+    }
+
+    System.err.printf("Solved %d scenes in %.1f s%n", solved,
+        (System.nanoTime() - start) / 1e9);
+  }
+
+  // writes the next result to finish
+  private static void write(Writer out, CompletionService<String> results)
+      throws IOException, InterruptedException {
+    try {
+      out.write(results.take().get());
+      out.write('\n');
+    } catch (ExecutionException e) {
+      // Solve reports its own failures, so this is an Error
+      throw new IllegalStateException("Scene solve failed", e.getCause());
+    }
+  }
+
+  /* Reads, solves and traces one scene, and returns its JSON line. */
+  private static class Solve implements Callable<String> {
+    private final Path path;
+    private final double tolerance;
+    private final TilePool tiles; // null unless the grid is tiled
+    private final boolean offHeap;
+
+    Solve(Path path, double tolerance, TilePool tiles, boolean offHeap) {
+      this.path = path;
+      this.tolerance = tolerance;
+      this.tiles = tiles;
+      this.offHeap = offHeap;
+    }
+
+    public String call() {
+      StringBuilder json = new StringBuilder(256);
+      json.append("{\"scene\":");
+      string(json, path.getFileName().toString());
+
+      try {
+        solve(json);
+      } catch (IOException | RuntimeException e) {
+        json.setLength(0);
+        json.append("{\"scene\":");
+        string(json, path.getFileName().toString());
+        json.append(",\"error\":");
+        string(json, String.valueOf(e.getMessage()));
+      }
+      return json.append('}').toString();
+    }
+
+    private void solve(StringBuilder json) throws IOException {
+      long begin = System.nanoTime();
+      SceneFile scene = SceneFile.read(path);
+      Resolution resolution = scene.getResolution();
+      int spacing = resolution.getSpacing();
+      int padding = resolution.getPadding();
+
+      int sourceX = (int) Math.floor((scene.getStartX() - padding) / spacing);
+      int sourceY = (int) Math.floor((scene.getStartY() - padding) / spacing);
+      if (sourceX < 0 || sourceX >= resolution.getDimX() || sourceY < 0
+          || sourceY >= resolution.getDimY())
+        throw new IOException(scene.getName() + ": start outside the grid");
+
+      long read = System.nanoTime();
+      Grid grid;
+      if (tiles != null) {
+        grid = new TiledGrid(resolution, padding, padding, tiles);
+      } else if (offHeap) {
+        grid = new OffHeapGrid(resolution, padding, padding);
+      } else {
+        grid = new Grid(resolution, padding, padding);
+      }
+      ObstacleRasterizer.rasterize(grid, scene.getObstacles());
+
+      long rasterized = System.nanoTime();
+      FmmSolver solver = new FmmSolver(grid);
+      if (tiles != null && scene.getTargets().size() == 1) {
+        double[] end = scene.getTargets().get(0);
+        int x = (int) Math.floor((end[0] - padding) / spacing);
+        int y = (int) Math.floor((end[1] - padding) / spacing);
+        solver.setTarget(Math.max(0, Math.min(resolution.getDimX() - 2, x)),
+            Math.max(0, Math.min(resolution.getDimY() - 2, y)));
+        solver.setHeuristic(true);
+      }
+      if (!solver.addSource(sourceX, sourceY))
+        throw new IOException(scene.getName() + ": start inside an obstacle");
+      solver.march();
+
+      long marched = System.nanoTime();
+      PathTracer tracer = new PathTracer(grid);
+      StringBuilder targets = new StringBuilder();
+      for (double[] target : scene.getTargets()) {
+        if (targets.length() > 0)
+          targets.append(',');
+
+        double time = tracer.interpoTime(target[0], target[1]);
+        targets.append("{\"x\":");
+        number(targets, target[0]);
+        targets.append(",\"y\":");
+        number(targets, target[1]);
+        targets.append(",\"time\":");
+        if (time < Grid.INF) {
+          number(targets, time);
+        } else {
+          targets.append("null");
+        }
+
+        Polyline path = tracer.tracePath(target[0], target[1]);
+        if (tolerance > 0)
+          path = path.simplify(tolerance);
+        targets.append(",\"path\":[");
+        for (int i = 0; i < path.size(); i++) {
+          targets.append(i == 0 ? "[" : ",[");
+          number(targets, path.getX(i));
+          targets.append(',');
+          number(targets, path.getY(i));
+          targets.append(']');
+        }
+        targets.append("]}");
+      }
+      long traced = System.nanoTime();
+
+      json.append(",\"dimX\":").append(resolution.getDimX());
+      json.append(",\"dimY\":").append(resolution.getDimY());
+      json.append(",\"readMs\":");
+      number(json, (read - begin) / 1e6);
+      json.append(",\"rasterizeMs\":");
+      number(json, (rasterized - read) / 1e6);
+      json.append(",\"solveMs\":");
+      number(json, (marched - rasterized) / 1e6);
+      json.append(",\"traceMs\":");
+      number(json, (traced - marched) / 1e6);
+      if (tiles != null) {
+        json.append(",\"tiles\":").append(((TiledGrid) grid).getTileCount());
+        grid.reset(); // back to the pool for the next scene
+      }
+      json.append(",\"targets\":[").append(targets).append(']');
+    }
+  }
+
+  // a number to three decimals
+  private static void number(StringBuilder json, double value) {
+    json.append(Math.round(value * 1000) / 1000.0);
+  }
+
+  // a JSON string, quoted and escaped
+  private static void string(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+
+  private SolveScenes() {
+  }
+}
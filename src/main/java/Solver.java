@@ -0,0 +1,23 @@
+/* An engine that solves travel times over a Grid from source cells. The
+ * grid's feasibility must be set before the first source is added.
+ */
+interface Solver {
+
+  /* Receives progress from a running solve, on the solving thread. */
+  interface ProgressListener {
+    void progress(int solved, int total);
+  }
+
+  Grid getGrid();
+
+  /* Adds a source cell with zero travel time. Returns false if the cell is
+   * inside an obstacle. */
+  boolean addSource(int x, int y);
+
+  /* Solves the grid from the sources added so far. Returns false if the
+   * solve was cancelled before it finished. */
+  boolean march(ProgressListener listener);
+
+  /* Asks a running solve to stop. Safe to call from any thread. */
+  void cancel();
+}
@@ -0,0 +1,63 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/* Builds the per-cell cost maps a Grid solves weighted travel times over,
+ * from a speed for every cell: the cost of a cell is 1 / speed, and a cell
+ * with speed zero (or less) can not be crossed at all.
+ */
+class SpeedMap {
+
+  private SpeedMap() {
+  }
+
+  /* Cost map from an array of speeds, one per cell in index order. */
+  public static float[] fromSpeeds(float[] speeds) {
+    float[] cost = new float[speeds.length];
+    for (int id = 0; id < speeds.length; id++) {
+      cost[id] = speeds[id] > 0 ? 1 / speeds[id] : Float.POSITIVE_INFINITY;
+    }
+    return cost;
+  }
+
+  /* Cost map from an image stretched over the grid: the brightness of the
+   * pixel under each node is mapped linearly from black at minSpeed to
+   * white at maxSpeed. With a minSpeed of zero, black is impassable.
+   */
+  public static float[] fromImage(BufferedImage image, int dimX, int dimY,
+      float minSpeed, float maxSpeed) {
+    float[] speeds = new float[dimX * dimY];
+
+    for (int y = 0; y < dimY; y++) {
+      int pixelY = (int) ((y + 0.5) * image.getHeight() / dimY);
+      for (int x = 0; x < dimX; x++) {
+        int pixelX = (int) ((x + 0.5) * image.getWidth() / dimX);
+        int rgb = image.getRGB(pixelX, pixelY);
+
+        float brightness = (0.299f * ((rgb >> 16) & 0xff)
+            + 0.587f * ((rgb >> 8) & 0xff) + 0.114f * (rgb & 0xff)) / 255;
+        speeds[y * dimX + x] = minSpeed + brightness * (maxSpeed - minSpeed);
+      }
+    }
+
+    return fromSpeeds(speeds);
+  }
+
+  /* Cost map from a raw file of dimX * dimY little endian 32 bit float
+   * speeds, in index order. */
+  public static float[] fromRaw(Path path, int dimX, int dimY)
+      throws IOException {
+    byte[] bytes = Files.readAllBytes(path);
+    if (bytes.length != 4L * dimX * dimY)
+      throw new IOException("Expected " + 4L * dimX * dimY
+          + " bytes of speeds, found " + bytes.length);
+
+    float[] speeds = new float[dimX * dimY];
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+        .get(speeds);
+    return fromSpeeds(speeds);
+  }
+}
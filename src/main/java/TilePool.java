@@ -0,0 +1,64 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/* Tiles of travel times and fast marching states for TiledGrid, kept for
+ * reuse. A grid hands its tiles back when it is reset, so a run of solves
+ * only allocates tiles for the largest area one of them marched through.
+ * A pool can be shared by grids on different threads.
+ */
+class TilePool {
+  // tiles are 64 x 64 cells
+  static final int SHIFT = 6;
+  static final int SIZE = 1 << SHIFT;
+  static final int MASK = SIZE - 1;
+
+  /* The cells of one tile, row by row: far, at a travel time of INF, until
+   * they are written. */
+  static class Tile {
+    final double[] time = new double[SIZE * SIZE];
+    final byte[] state = new byte[SIZE * SIZE];
+
+    Tile() {
+      Arrays.fill(time, Grid.INF);
+    }
+  }
+
+  private final ArrayDeque<Tile> free;
+  private final int capacity; // most tiles kept for reuse
+
+  TilePool(int capacity) {
+    free = new ArrayDeque<Tile>();
+    this.capacity = capacity;
+  }
+
+  // a tile of far cells, reused if one is free
+  public Tile acquire() {
+    synchronized (this) {
+      Tile tile = free.poll();
+      if (tile != null)
+        return tile;
+    }
+    return new Tile();
+  }
+
+  /* Takes back a tile its grid no longer uses, unless the pool is full. It
+   * is cleared here, outside the lock. */
+  public void release(Tile tile) {
+    synchronized (this) {
+      if (free.size() >= capacity)
+        return;
+    }
+
+    Arrays.fill(tile.time, Grid.INF);
+    Arrays.fill(tile.state, Grid.FAR);
+    synchronized (this) {
+      if (free.size() < capacity)
+        free.push(tile);
+    }
+  }
+
+  // number of tiles waiting to be reused
+  public synchronized int size() {
+    return free.size();
+  }
+}
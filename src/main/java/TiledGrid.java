@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+/* A Grid that keeps its cells in 64 x 64 tiles, each allocated when one of
+ * its cells is first written: a travel time below INF, or a state other
+ * than far. Until then a tile reads as far cells at INF, so a solve only
+ * uses memory for the area the front marches through, not for the whole
+ * grid. With a target (see FmmSolver.setTarget()) that is a small part of
+ * a huge, mostly empty map. Tiles come from a TilePool and go back to it
+ * on reset(), so the next solve reuses them.
+ *
+ * Feasibility is kept per tile as well, a long per tile row, allocated
+ * when a cell of the tile is first blocked. A cost map is still a dense
+ * array (see Grid.setCosts()), and so are FmmSolver's labels and the
+ * region of update().
+ *
+ * Cells keep their index y * dimX + x, so solvers and tracers read a
+ * TiledGrid just as they read a dense one.
+ */
+class TiledGrid extends Grid {
+  private static final int SHIFT = TilePool.SHIFT;
+  private static final int MASK = TilePool.MASK;
+
+  private final TilePool pool;
+  private final int tilesX; // tiles across the grid
+  private final TilePool.Tile[] tiles; // null until a cell is written
+  private final long[][] blocked; // a word per tile row, null if none set
+  private int tileCount; // tiles allocated
+
+  TiledGrid(int dimX, int dimY, int spacing, double originX, double originY,
+      TilePool pool) {
+    super(dimX, dimY, spacing, originX, originY, false);
+    this.pool = pool;
+
+    tilesX = (dimX + MASK) >>> SHIFT;
+    int tilesY = (dimY + MASK) >>> SHIFT;
+    tiles = new TilePool.Tile[tilesX * tilesY];
+    blocked = new long[tilesX * tilesY][];
+  }
+
+  // grid laid out by a resolution
+  TiledGrid(Resolution resolution, double originX, double originY,
+      TilePool pool) {
+    this(resolution.getDimX(), resolution.getDimY(), resolution.getSpacing(),
+        originX, originY, pool);
+  }
+
+  // number of tiles holding travel times
+  public int getTileCount() {
+    return tileCount;
+  }
+
+  public double getTime(int id) {
+    return getTime(xOf(id), yOf(id));
+  }
+
+  public double getTime(int x, int y) {
+    TilePool.Tile tile = tiles[tileOf(x, y)];
+    return tile == null ? INF : tile.time[cellOf(x, y)];
+  }
+
+  public void setTime(int id, double t) {
+    int x = xOf(id);
+    int y = yOf(id);
+    TilePool.Tile tile = tiles[tileOf(x, y)];
+    if (tile == null) {
+      if (t >= INF)
+        return;
+      tile = allocate(tileOf(x, y));
+    }
+    tile.time[cellOf(x, y)] = t;
+  }
+
+  public byte getState(int id) {
+    int x = xOf(id);
+    int y = yOf(id);
+    TilePool.Tile tile = tiles[tileOf(x, y)];
+    return tile == null ? FAR : tile.state[cellOf(x, y)];
+  }
+
+  public void setState(int id, byte s) {
+    int x = xOf(id);
+    int y = yOf(id);
+    TilePool.Tile tile = tiles[tileOf(x, y)];
+    if (tile == null) {
+      if (s == FAR)
+        return;
+      tile = allocate(tileOf(x, y));
+    }
+    tile.state[cellOf(x, y)] = s;
+  }
+
+  public boolean isFeasible(int id) {
+    return isFeasible(xOf(id), yOf(id));
+  }
+
+  public boolean isFeasible(int x, int y) {
+    long[] words = blocked[tileOf(x, y)];
+    return words == null || (words[y & MASK] & (1L << x)) == 0;
+  }
+
+  public void setFeasible(int id, boolean feasible) {
+    int x = xOf(id);
+    int y = yOf(id);
+    long[] words = blocked[tileOf(x, y)];
+    if (feasible) {
+      if (words != null)
+        words[y & MASK] &= ~(1L << x);
+    } else {
+      blockedWords(tileOf(x, y))[y & MASK] |= 1L << x;
+    }
+  }
+
+  // blocks the run of cells fromX..toX (inclusive) of row y, a tile at a time
+  public void blockSpan(int y, int fromX, int toX) {
+    for (int x = fromX; x <= toX; x = (x | MASK) + 1) {
+      int last = Math.min(toX, x | MASK); // last cell of the run in this tile
+      long mask = (-1L << x) & (-1L >>> (MASK - (last & MASK)));
+      blockedWords(tileOf(x, y))[y & MASK] |= mask;
+    }
+  }
+
+  /* Gives every tile back to the pool, which puts every cell back in the
+   * far set with an infinite travel time. Feasibility is left alone.
+   */
+  public void reset() {
+    for (int i = 0; i < tiles.length; i++) {
+      if (tiles[i] != null) {
+        pool.release(tiles[i]);
+        tiles[i] = null;
+      }
+    }
+    tileCount = 0;
+  }
+
+  public void resetFeasible() {
+    Arrays.fill(blocked, null);
+    blockImpassable();
+  }
+
+  private int tileOf(int x, int y) {
+    return (y >>> SHIFT) * tilesX + (x >>> SHIFT);
+  }
+
+  private static int cellOf(int x, int y) {
+    return (y & MASK) << SHIFT | (x & MASK);
+  }
+
+  private TilePool.Tile allocate(int tile) {
+    tiles[tile] = pool.acquire();
+    tileCount++;
+    return tiles[tile];
+  }
+
+  private long[] blockedWords(int tile) {
+    if (blocked[tile] == null)
+      blocked[tile] = new long[MASK + 1];
+    return blocked[tile];
+  }
+}
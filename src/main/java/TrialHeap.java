@@ -0,0 +1,164 @@
+import java.util.Arrays;
+
+/* Indexed binary min-heap of trial cells for the fast marching narrow band.
+ * Cells are identified by their grid index, so membership tests and key
+ * updates (decrease-key or increase-key) are constant time lookups followed
+ * by an O(log n) sift.
+ *
+ * Nothing is allocated per cell of the grid up front: the heap grows with
+ * the narrow band, and the slot of each cell is kept in pages of 1024 ids
+ * allocated as cells in them first enter it. A march that only covers part
+ * of a huge grid (see TiledGrid) only pays for that part. Both are kept
+ * for the next march once allocated.
+ */
+class TrialHeap {
+  private static final int PAGE_SHIFT = 10;
+  private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+  private static final int INITIAL_CAPACITY = 4096;
+
+  private int[] heap; // cell ids in heap order
+  private double[] keys; // keys, aligned with heap
+  private int[][] pos; // heap slot of each cell id, -1 if not in the heap
+  private int size;
+
+  // a heap for the cell ids 0 to cells - 1
+  TrialHeap(int cells) {
+    int capacity = Math.max(1, Math.min(cells, INITIAL_CAPACITY));
+    heap = new int[capacity];
+    keys = new double[capacity];
+    pos = new int[(int) ((cells + (long) PAGE_MASK) >>> PAGE_SHIFT)][];
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(int id) {
+    int[] page = pos[id >>> PAGE_SHIFT];
+    return page != null && page[id & PAGE_MASK] >= 0;
+  }
+
+  // returns the key of a cell in the heap
+  public double keyOf(int id) {
+    return keys[pos[id >>> PAGE_SHIFT][id & PAGE_MASK]];
+  }
+
+  // returns the id of the cell with the smallest key without removing it
+  public int peek() {
+    return heap[0];
+  }
+
+  // adds a cell, or updates its key if it is already in the heap
+  public void insert(int id, double key) {
+    int[] page = pos[id >>> PAGE_SHIFT];
+    if (page == null) {
+      page = new int[PAGE_MASK + 1];
+      Arrays.fill(page, -1);
+      pos[id >>> PAGE_SHIFT] = page;
+    } else if (page[id & PAGE_MASK] >= 0) {
+      update(id, key);
+      return;
+    }
+
+    if (size == heap.length) {
+      heap = Arrays.copyOf(heap, 2 * size);
+      keys = Arrays.copyOf(keys, 2 * size);
+    }
+
+    heap[size] = id;
+    keys[size] = key;
+    page[id & PAGE_MASK] = size;
+    siftUp(size++);
+  }
+
+  // changes the key of a cell already in the heap, in either direction
+  public void update(int id, double key) {
+    int slot = pos[id >>> PAGE_SHIFT][id & PAGE_MASK];
+    double old = keys[slot];
+    keys[slot] = key;
+
+    if (key < old) {
+      siftUp(slot);
+    } else if (key > old) {
+      siftDown(slot);
+    }
+  }
+
+  // removes and returns the id of the cell with the smallest key
+  public int poll() {
+    int min = heap[0];
+    setSlot(min, -1);
+    size--;
+
+    if (size > 0) {
+      heap[0] = heap[size];
+      keys[0] = keys[size];
+      setSlot(heap[0], 0);
+      siftDown(0);
+    }
+    return min;
+  }
+
+  // empties the heap, touching only the cells that are still in it
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      setSlot(heap[i], -1);
+    }
+    size = 0;
+  }
+
+  private void siftUp(int slot) {
+    int id = heap[slot];
+    double key = keys[slot];
+
+    while (slot > 0) {
+      int parent = (slot - 1) >>> 1;
+      if (keys[parent] <= key)
+        break;
+
+      move(parent, slot);
+      slot = parent;
+    }
+    place(id, key, slot);
+  }
+
+  private void siftDown(int slot) {
+    int id = heap[slot];
+    double key = keys[slot];
+    int half = size >>> 1;
+
+    while (slot < half) {
+      int child = 2 * slot + 1;
+      if (child + 1 < size && keys[child + 1] < keys[child])
+        child++;
+      if (key <= keys[child])
+        break;
+
+      move(child, slot);
+      slot = child;
+    }
+    place(id, key, slot);
+  }
+
+  private void move(int from, int to) {
+    heap[to] = heap[from];
+    keys[to] = keys[from];
+    setSlot(heap[to], to);
+  }
+
+  private void place(int id, double key, int slot) {
+    heap[slot] = id;
+    keys[slot] = key;
+    setSlot(id, slot);
+  }
+
+  // records the slot of a cell whose page is allocated
+  private void setSlot(int id, int slot) {
+    pos[id >>> PAGE_SHIFT][id & PAGE_MASK] = slot;
+  }
+}